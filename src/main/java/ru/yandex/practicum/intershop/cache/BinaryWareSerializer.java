@@ -0,0 +1,140 @@
+package ru.yandex.practicum.intershop.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import ru.yandex.practicum.intershop.model.Ware;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Компактное двоичное представление товара в кэше Redis.
+ * <pre>
+ * [версия формата: 1 байт][флаги: 1 байт][(если LZ4) исходная длина: int][данные]
+ * данные: id long, price float, title, description, imageHash (строки: длина int, -1 = null, затем UTF-8),
+ *         createdAt (секунды эпохи UTC long, наносекунды int; наносекунды -1 = null)
+ * </pre>
+ * Данные длиннее порога сжимаются LZ4 (если это даёт выигрыш).
+ * Значения, записанные раньше в JSON, читаются как есть - смена формата не требует сброса кэша.
+ */
+public class BinaryWareSerializer implements RedisSerializer<Ware> {
+    static final byte VERSION = 1;
+    private static final byte FLAG_LZ4 = 1;
+    private static final int HEADER = 2;
+    private static final int NULL = -1;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final int compressThreshold;        //Сжимать данные длиннее порога; отрицательный - не сжимать
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+    private final Jackson2JsonRedisSerializer<Ware> legacy = new Jackson2JsonRedisSerializer<>(Ware.class);
+
+    public BinaryWareSerializer(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Ware ware) throws SerializationException {
+        if (ware == null)
+            return null;
+
+        byte[] title = utf8(ware.getTitle());
+        byte[] description = utf8(ware.getDescription());
+        byte[] imageHash = utf8(ware.getImageHash());
+
+        ByteBuffer data = ByteBuffer.allocate(Long.BYTES + Float.BYTES +
+                                              length(title) + length(description) + length(imageHash) +
+                                              Long.BYTES + Integer.BYTES);
+        data.putLong(ware.getId());
+        data.putFloat(ware.getPrice());
+        putString(data, title);
+        putString(data, description);
+        putString(data, imageHash);
+        if (ware.getCreatedAt() != null) {
+            data.putLong(ware.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+            data.putInt(ware.getCreatedAt().getNano());
+        } else {
+            data.putLong(0);
+            data.putInt(NULL);
+        }
+        byte[] raw = data.array();
+
+        if (compressThreshold >= 0 && raw.length > compressThreshold) {
+            byte[] packed = new byte[HEADER + Integer.BYTES + compressor.maxCompressedLength(raw.length)];
+            int packedLength = compressor.compress(raw, 0, raw.length, packed, HEADER + Integer.BYTES);
+            if (packedLength < raw.length) {
+                ByteBuffer out = ByteBuffer.allocate(HEADER + Integer.BYTES + packedLength);
+                out.put(VERSION).put(FLAG_LZ4).putInt(raw.length).put(packed, HEADER + Integer.BYTES, packedLength);
+                return out.array();
+            }
+        }
+
+        return ByteBuffer.allocate(HEADER + raw.length).put(VERSION).put((byte) 0).put(raw).array();
+    }
+
+    @Override
+    public Ware deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0)
+            return null;
+        if (bytes[0] == '{')                                        //Значение в прежнем формате (JSON)
+            return legacy.deserialize(bytes);
+        if (bytes[0] != VERSION)
+            throw new SerializationException("Unsupported ware cache format version " + bytes[0]);
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes, HEADER, bytes.length - HEADER);
+            if ((bytes[1] & FLAG_LZ4) != 0) {
+                byte[] raw = new byte[in.getInt()];
+                decompressor.decompress(bytes, HEADER + Integer.BYTES, raw, 0, raw.length);
+                in = ByteBuffer.wrap(raw);
+            }
+
+            Ware ware = new Ware();
+            ware.setId(in.getLong());
+            ware.setPrice(in.getFloat());
+            ware.setTitle(getString(in));
+            ware.setDescription(getString(in));
+            ware.setImageHash(getString(in));
+            long seconds = in.getLong();
+            int nanos = in.getInt();
+            if (nanos != NULL)
+                ware.setCreatedAt(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            return ware;
+        } catch (RuntimeException e) {                             //Обрезанные или испорченные данные
+            throw new SerializationException("Corrupted ware cache value", e);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL)
+            return null;
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.intershop.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Метрики одного пространства имён кэша (WARE, SEARCH, ...):
+ * попадания по уровням (локальный кэш / Redis), промахи и время загрузки из базы
+ */
+public class CacheMetrics {
+    private static final String GETS = "intershop.cache.gets";
+    private static final String LOADS = "intershop.cache.loads";
+
+    private final MeterRegistry registry;
+    private final Counter nearHits;
+    private final Counter redisHits;
+    private final Counter misses;
+    private final Timer loads;
+
+    public CacheMetrics(MeterRegistry registry, String cache) {
+        this.registry = registry;
+        this.nearHits = Counter.builder(GETS)
+                .description("Обращения к кэшу")
+                .tags("cache", cache, "result", "hit", "tier", "near")
+                .register(registry);
+        this.redisHits = Counter.builder(GETS)
+                .description("Обращения к кэшу")
+                .tags("cache", cache, "result", "hit", "tier", "redis")
+                .register(registry);
+        this.misses = Counter.builder(GETS)
+                .description("Обращения к кэшу")
+                .tags("cache", cache, "result", "miss", "tier", "none")
+                .register(registry);
+        this.loads = Timer.builder(LOADS)
+                .description("Загрузка в кэш из базы после промаха")
+                .tags("cache", cache)
+                .register(registry);
+    }
+
+    public void nearHit() {
+        nearHits.increment();
+    }
+
+    public void nearHits(int count) {
+        nearHits.increment(count);
+    }
+
+    public void redisHit() {
+        redisHits.increment();
+    }
+
+    public void redisHits(int count) {
+        redisHits.increment(count);
+    }
+
+    public void miss() {
+        misses.increment();
+    }
+
+    public void misses(int count) {
+        misses.increment(count);
+    }
+
+    /**
+     * Замер времени загрузки (от подписки до завершения)
+     */
+    public <T> Mono<T> timeLoad(Mono<T> load) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return load.doFinally(signal -> sample.stop(loads));
+        });
+    }
+}
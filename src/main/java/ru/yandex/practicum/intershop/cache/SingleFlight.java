@@ -0,0 +1,30 @@
+package ru.yandex.practicum.intershop.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных загрузок по одному ключу (single-flight):
+ * пока загрузка по ключу выполняется, остальные запросы подписываются на её результат,
+ * а не запускают собственную.
+ *
+ * @param <T> Тип загружаемого значения
+ */
+public class SingleFlight<T> {
+    private final Map<String, Mono<T>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Загрузка значения по ключу
+     * @param key       Ключ
+     * @param loader    Загрузчик (вызывается только если по ключу нет выполняющейся загрузки)
+     * @return          Результат загрузки, общий для всех одновременных запросов
+     */
+    public Mono<T> load(String key, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> loader.get()
+                                                                         .doFinally(signal -> inFlight.remove(k))
+                                                                         .cache()));
+    }
+}
@@ -0,0 +1,221 @@
+package ru.yandex.practicum.intershop.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.SearchPage;
+import ru.yandex.practicum.intershop.model.SortKind;
+import ru.yandex.practicum.intershop.model.Ware;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Отсортированные индексы идентификаторов товаров в Redis (ZSET) для просмотра каталога без поиска.
+ * Страница любой глубины - ZRANGE по рангу за O(log N + размер страницы) вместо ORDER BY ... OFFSET в базе.
+ * <ul>
+ *     <li>NO - по идентификатору (score - id);</li>
+ *     <li>PRICE - по цене (score - цена), при равной цене - по идентификатору;</li>
+ *     <li>ALPHA - лексикографический: score 0, элемент "название\0id" (порядок - по кодам символов).</li>
+ * </ul>
+ * Идентификатор в элементе дополнен нулями до 19 цифр, поэтому равные score упорядочены по id, как в базе.
+ * <p>
+ * Индекс читается, только если он построен (ключ READY). Новые и изменённые товары добавляются
+ * инкрементально; полная перестройка идёт во временные ключи и подменяет индекс атомарно (Lua),
+ * только если за время перестройки не было инкрементальных изменений (счётчик EPOCH) -
+ * иначе результат отбрасывается, и перестройка повторится при следующем обращении.
+ * Все ключи - в одном слоте кластера (hash tag).
+ */
+@Slf4j
+public class SortedWareIndex {
+    private static final String PREFIX = "{WARE_INDEX}:";
+    private static final String READY = PREFIX + "READY";               //Индекс построен и актуален
+    private static final String EPOCH = PREFIX + "EPOCH";               //Счётчик изменений индекса
+    private static final String LOCK = PREFIX + "LOCK";                 //Перестройка на одном из экземпляров
+    private static final String BUILD = PREFIX + "BUILD:";              //Временные ключи перестройки
+    private static final List<SortKind> INDEXED = List.of(SortKind.NO, SortKind.ALPHA, SortKind.PRICE);
+    private static final int ID_DIGITS = 19;
+    private static final int BUILD_CHUNK = 1000;                        //Элементов в одном ZADD перестройки
+
+    //Подмена индекса построенным, если за время перестройки не было изменений
+    //KEYS: EPOCH, READY, LOCK, 3 ключа индекса, 3 временных ключа; ARGV: EPOCH на начало перестройки
+    private static final RedisScript<Long> SWAP = RedisScript.of("""
+            if (redis.call('GET', KEYS[1]) or '0') ~= ARGV[1] then
+                redis.call('DEL', KEYS[7], KEYS[8], KEYS[9], KEYS[3])
+                return 0
+            end
+            for i = 0, 2 do
+                if redis.call('EXISTS', KEYS[7 + i]) == 1 then
+                    redis.call('RENAME', KEYS[7 + i], KEYS[4 + i])
+                else
+                    redis.call('DEL', KEYS[4 + i])
+                end
+            end
+            redis.call('SET', KEYS[2], ARGV[1])
+            redis.call('DEL', KEYS[3])
+            return 1
+            """, Long.class);
+
+    private final ReactiveRedisTemplate<String, String> redisStringTempl;
+    private final Duration buildTimeout;                                //Время жизни блокировки перестройки
+    private final AtomicBoolean building = new AtomicBoolean();         //Перестройка на этом экземпляре
+
+    public SortedWareIndex(ReactiveRedisTemplate<String, String> redisStringTempl, Duration buildTimeout) {
+        this.redisStringTempl = redisStringTempl;
+        this.buildTimeout = buildTimeout;
+    }
+
+    /**
+     * Страница идентификаторов из индекса
+     * @param sortKind  Тип сортировки
+     * @param pageable  Атрибуты страницы
+     * @return          Страница с общим количеством (пусто, если индекс не построен)
+     */
+    public Mono<SearchPage> page(SortKind sortKind, Pageable pageable) {
+        String key = key(sortKind);
+        long start = pageable.getOffset();
+
+        return Mono.zip(redisStringTempl.hasKey(READY),
+                        redisStringTempl.opsForZSet()
+                                        .range(key, Range.closed(start, start + pageable.getPageSize() - 1))
+                                        .map(SortedWareIndex::idOf)
+                                        .collectList(),
+                        redisStringTempl.opsForZSet().size(key))
+                   .filter(found -> found.getT1())
+                   .map(found -> new SearchPage(found.getT2(),
+                                                found.getT3(),
+                                                start + found.getT2().size() < found.getT3()));
+    }
+
+    /**
+     * Добавление новых товаров в индекс
+     * @param wares Сохранённые товары (с идентификаторами)
+     * @return      Завершение
+     */
+    public Mono<Void> add(Collection<Ware> wares) {
+        if (wares.isEmpty())
+            return Mono.empty();
+        return change(Mono.empty(), wares);
+    }
+
+    /**
+     * Изменение товара в индексе (название и цена могли поменяться)
+     * @param previous  Товар до изменения
+     * @param updated   Товар после изменения
+     * @return          Завершение
+     */
+    public Mono<Void> update(Ware previous, Ware updated) {
+        return change(redisStringTempl.opsForZSet().remove(key(SortKind.ALPHA), alphaMember(previous)).then(),
+                      List.of(updated));
+    }
+
+    /**
+     * Инкрементальное изменение. Счётчик EPOCH увеличивается до записи: перестройка, начатая раньше,
+     * будет отброшена, а начатая позже уже увидит изменение в базе.
+     * При ошибке индекс сбрасывается, чтобы не отдавать страницы без изменённых товаров.
+     */
+    private Mono<Void> change(Mono<Void> removal, Collection<Ware> wares) {
+        return redisStringTempl.opsForValue().increment(EPOCH)
+                .then(removal)
+                .then(Flux.fromIterable(INDEXED)
+                          .concatMap(sortKind -> redisStringTempl.opsForZSet().addAll(key(sortKind), tuples(sortKind, wares)))
+                          .then())
+                .onErrorResume(e -> {
+                    log.warn("Sorted ware index update failed, index is reset: {}", e.getMessage());
+                    return reset().onErrorResume(ignored -> Mono.empty());
+                });
+    }
+
+    /**
+     * Сброс индекса (после изменений каталога в обход сервиса): до перестройки страницы берутся из базы
+     * @return  Завершение
+     */
+    public Mono<Void> reset() {
+        return redisStringTempl.opsForValue().increment(EPOCH)
+                .then(redisStringTempl.delete(READY))
+                .then();
+    }
+
+    /**
+     * Полная перестройка индекса (не больше одной на экземпляре и, по блокировке в Redis, во всём кластере)
+     * @param source    Все товары (достаточно id, названия и цены)
+     * @return          Подменён ли индекс построенным (false - перестройка уже идёт или результат устарел)
+     */
+    public Mono<Boolean> rebuild(Flux<Ware> source) {
+        return Mono.defer(() -> {
+            if (!building.compareAndSet(false, true))
+                return Mono.just(false);
+
+            String token = UUID.randomUUID().toString();
+            return redisStringTempl.opsForValue()
+                    .setIfAbsent(LOCK, token, buildTimeout)
+                    .flatMap(locked -> !locked ?
+                            Mono.just(false) :
+                            redisStringTempl.opsForValue()
+                                    .get(EPOCH)
+                                    .defaultIfEmpty("0")
+                                    .flatMap(epoch -> build(source, epoch))
+                                    .onErrorResume(e -> redisStringTempl.delete(LOCK).then(Mono.error(e))))
+                    .doFinally(signal -> building.set(false));
+        });
+    }
+
+    private Mono<Boolean> build(Flux<Ware> source, String epoch) {
+        long started = System.nanoTime();
+        List<String> keys = new ArrayList<>(List.of(EPOCH, READY, LOCK));
+        INDEXED.forEach(sortKind -> keys.add(key(sortKind)));
+        INDEXED.forEach(sortKind -> keys.add(BUILD + sortKind.name()));
+
+        return redisStringTempl.delete(keys.subList(6, 9).toArray(String[]::new))
+                .thenMany(source.buffer(BUILD_CHUNK))
+                .concatMap(chunk -> Flux.fromIterable(INDEXED)
+                                        .concatMap(sortKind -> redisStringTempl.opsForZSet()
+                                                                               .addAll(BUILD + sortKind.name(),
+                                                                                       tuples(sortKind, chunk))))
+                .then(redisStringTempl.execute(SWAP, keys, List.of(epoch)).next())
+                .map(swapped -> swapped == 1L)
+                .doOnNext(swapped -> log.info(swapped ?
+                                                      "Sorted ware index rebuilt in {} ms." :
+                                                      "Sorted ware index rebuild discarded after {} ms: catalog changed.",
+                                              Duration.ofNanos(System.nanoTime() - started).toMillis()));
+    }
+
+    /**
+     * Ключ индекса сортировки (RELEVANCE без строки поиска - то же, что NO)
+     */
+    private static String key(SortKind sortKind) {
+        return PREFIX + (sortKind == SortKind.RELEVANCE ? SortKind.NO : sortKind).name();
+    }
+
+    private static List<TypedTuple<String>> tuples(SortKind sortKind, Collection<Ware> wares) {
+        List<TypedTuple<String>> tuples = new ArrayList<>(wares.size());
+        for (Ware ware : wares)
+            tuples.add(switch (sortKind) {
+                case ALPHA -> TypedTuple.of(alphaMember(ware), 0D);
+                case PRICE -> TypedTuple.of(idMember(ware.getId()), (double) ware.getPrice());
+                default    -> TypedTuple.of(idMember(ware.getId()), (double) ware.getId());
+            });
+        return tuples;
+    }
+
+    private static String idMember(long id) {
+        return String.format("%0" + ID_DIGITS + "d", id);
+    }
+
+    private static String alphaMember(Ware ware) {
+        return (ware.getTitle() == null ? "" : ware.getTitle()) + '\0' + idMember(ware.getId());
+    }
+
+    private static long idOf(String member) {
+        return Long.parseLong(member.substring(member.length() - ID_DIGITS));
+    }
+}
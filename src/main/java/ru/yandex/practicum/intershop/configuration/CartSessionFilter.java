@@ -0,0 +1,58 @@
+package ru.yandex.practicum.intershop.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.CartSession;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Привязка корзины к посетителю: владелец корзины и истории заказов - постоянная cookie CART_ID
+ * (не зависит от времени жизни веб-сессии, перезапуска и экземпляра приложения), веб-сессия -
+ * только кэш идентификатора активного заказа. Корзина кладётся в контекст Reactor обработки запроса.
+ * Картинкам cookie не выдаётся - их ответы кэшируются клиентом/CDN.
+ */
+@Component
+public class CartSessionFilter implements WebFilter {
+    public static final String CART_COOKIE = "CART_ID";
+    private static final Pattern CART_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private final Duration cookieMaxAge;
+
+    public CartSessionFilter(@Value("${intershop.cart.cookie-max-age:P365D}") Duration cookieMaxAge) {
+        this.cookieMaxAge = cookieMaxAge;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (exchange.getRequest().getPath().value().startsWith("/images/"))
+            return chain.filter(exchange);
+
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(CART_COOKIE);
+        String cartId;
+        if (cookie != null && CART_ID.matcher(cookie.getValue()).matches())
+            cartId = cookie.getValue();
+        else {
+            cartId = UUID.randomUUID().toString();
+            exchange.getResponse().addCookie(ResponseCookie.from(CART_COOKIE, cartId)
+                                                           .path("/")
+                                                           .maxAge(cookieMaxAge)
+                                                           .httpOnly(true)
+                                                           .sameSite("Lax")
+                                                           .build());
+        }
+
+        return exchange.getSession()
+                       .flatMap(session -> chain.filter(exchange)
+                                                .contextWrite(ctx -> ctx.put(CartSession.class,
+                                                                             CartSession.of(cartId, session))));
+    }
+}
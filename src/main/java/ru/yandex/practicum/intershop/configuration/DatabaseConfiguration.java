@@ -0,0 +1,18 @@
+package ru.yandex.practicum.intershop.configuration;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DatabaseConfiguration {
+
+    /**
+     * Определение платформы базы данных по метаданным фабрики соединений
+     */
+    @Bean
+    public DbPlatform dbPlatform(ConnectionFactory connectionFactory) {
+        String name = connectionFactory.getMetadata().getName();
+        return name.toUpperCase().contains("H2") ? DbPlatform.H2 : DbPlatform.POSTGRESQL;
+    }
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.intershop.configuration;
+
+/**
+ * Платформа базы данных (для запросов, синтаксис которых различается)
+ */
+public enum DbPlatform {
+    POSTGRESQL,     //Основная база приложения
+    H2              //База для тестов
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.intershop.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.http.server.logging.AccessLogFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал запросов: access log Reactor Netty (логгер reactor.netty.http.server.AccessLog)
+ * с выборкой - пишется один запрос из intershop.logging.sample-rate.
+ * Сам вывод асинхронный (см. logback-spring.xml), поэтому потоки event loop не ждут консоль.
+ */
+@Configuration
+@ConditionalOnProperty(name = "intershop.logging.access-log", havingValue = "true")
+public class LoggingConfiguration {
+
+    @Bean
+    public NettyServerCustomizer accessLogCustomizer(@Value("${intershop.logging.sample-rate:100}") int sampleRate) {
+        int rate = Math.max(1, sampleRate);
+        AtomicLong requests = new AtomicLong();
+        return httpServer -> httpServer.accessLog(true,
+                AccessLogFactory.createFilter(args -> requests.getAndIncrement() % rate == 0));
+    }
+}
@@ -1,13 +1,19 @@
 package ru.yandex.practicum.intershop.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import ru.yandex.practicum.intershop.cache.BinaryWareSerializer;
 import ru.yandex.practicum.intershop.model.Ware;
 
 @Configuration
@@ -15,11 +21,10 @@ import ru.yandex.practicum.intershop.model.Ware;
 public class RedisConfiguration {
 
     @Bean
-    public ReactiveRedisTemplate<String, Ware> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory) {
+    public ReactiveRedisTemplate<String, Ware> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory,
+                                                                     RedisSerializer<Ware> valueSerializer) {
         StringRedisSerializer keySerializer = new StringRedisSerializer();
 
-        Jackson2JsonRedisSerializer<Ware> valueSerializer = new Jackson2JsonRedisSerializer<>(Ware.class);
-
         RedisSerializationContext.RedisSerializationContextBuilder<String, Ware> builder =
                 RedisSerializationContext.newSerializationContext(keySerializer);
 
@@ -27,5 +32,40 @@ public class RedisConfiguration {
 
         return new ReactiveRedisTemplate<>(factory, context);
     }
-}
 
+    /**
+     * Кэш товаров в компактном двоичном формате (с LZ4 для длинных значений)
+     */
+    @Bean
+    @ConditionalOnProperty(name = "intershop.cache.codec", havingValue = "binary", matchIfMissing = true)
+    public RedisSerializer<Ware> binaryWareSerializer(
+            @Value("${intershop.cache.compress-threshold:512}") int compressThreshold) {
+        return new BinaryWareSerializer(compressThreshold);
+    }
+
+    /**
+     * Кэш товаров в JSON (читаемый, но больше по объёму и дороже в разборе)
+     */
+    @Bean
+    @ConditionalOnProperty(name = "intershop.cache.codec", havingValue = "json")
+    public RedisSerializer<Ware> jsonWareSerializer() {
+        return new Jackson2JsonRedisSerializer<>(Ware.class);
+    }
+
+
+    /**
+     * Скрипт изменения количества товара в корзине (HINCRBY + отметка для записи в базу)
+     */
+    @Bean
+    public RedisScript<Long> cartChangeScript() {
+        return RedisScript.of(new ClassPathResource("redis/cart-change.lua"), Long.class);
+    }
+
+    /**
+     * Скрипт загрузки корзины из базы в Redis (только если её там ещё нет)
+     */
+    @Bean
+    public RedisScript<Long> cartLoadScript() {
+        return RedisScript.of(new ClassPathResource("redis/cart-load.lua"), Long.class);
+    }
+}
@@ -0,0 +1,175 @@
+package ru.yandex.practicum.intershop.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.r2dbc.connection.init.ScriptUtils;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Версионные миграции схемы базы данных.
+ * Скрипты V<версия>__<описание>.sql берутся из общих каталогов и каталогов платформы ({vendor}),
+ * выполняются по возрастанию версии, каждый - в своей транзакции вместе с записью в schema_version.
+ * Уже применённые версии при запуске не выполняются повторно; если применённый скрипт с тех пор изменился,
+ * запуск прерывается.
+ * Каждая миграция выполняется под транзакционной блокировкой (в Postgres - pg_advisory_xact_lock) с повторной
+ * проверкой версии, поэтому экземпляры, запускаемые одновременно, не выполняют одну миграцию дважды.
+ */
+@Slf4j
+@Component
+public class SchemaMigrator implements InitializingBean {
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final long LOCK_KEY = 0x696E7465727368L;    //Ключ блокировки миграций ("intersh")
+
+    private static final String CREATE_VERSION_TABLE = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version      INT PRIMARY KEY,
+                description  VARCHAR(200) NOT NULL,
+                checksum     VARCHAR(64)  NOT NULL,
+                installed_at TIMESTAMP DEFAULT (now())
+            )
+            """;
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ResourcePatternResolver resourceResolver;
+    private final DbPlatform platform;
+    private final List<String> locations;
+
+    public SchemaMigrator(DatabaseClient databaseClient,
+                          TransactionalOperator transactionalOperator,
+                          ResourcePatternResolver resourceResolver,
+                          DbPlatform platform,
+                          @Value("${intershop.migration.locations:classpath:db/migration,classpath:db/migration/{vendor}}")
+                          List<String> locations) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.resourceResolver = resourceResolver;
+        this.platform = platform;
+        this.locations = locations;
+    }
+
+    /**
+     * Схема приводится к актуальной версии до начала работы приложения
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        migrate().block();
+    }
+
+    public Mono<Void> migrate() throws IOException {
+        SortedMap<Integer, Resource> scripts = findScripts();
+
+        return locked(databaseClient.sql(CREATE_VERSION_TABLE).then())
+                .then(databaseClient.sql("SELECT version, checksum FROM schema_version")
+                                    .map(row -> Map.entry(row.get("version", Integer.class),
+                                                          row.get("checksum", String.class)))
+                                    .all()
+                                    .collectMap(Map.Entry::getKey, Map.Entry::getValue))
+                .flatMap(applied -> Flux.fromIterable(scripts.entrySet())
+                        .concatMap(script -> {
+                            String checksum = checksum(script.getValue());
+                            String appliedChecksum = applied.get(script.getKey());
+                            if (appliedChecksum == null)
+                                return apply(script.getKey(), script.getValue(), checksum);
+                            if (!appliedChecksum.equals(checksum))
+                                return Mono.error(new IllegalStateException(
+                                        "Migration " + script.getValue().getFilename() +
+                                        " was changed after it had been applied"));
+                            return Mono.empty();
+                        })
+                        .then());
+    }
+
+    /**
+     * Выполнение в транзакции под блокировкой миграций. В Postgres блокировка транзакционная
+     * (pg_advisory_xact_lock): берётся на соединении транзакции и снимается при её завершении, в том числе
+     * при ошибке. Встроенная база H2 (тесты) доступна одному процессу - блокировка не нужна.
+     */
+    private Mono<Void> locked(Mono<Void> work) {
+        Mono<Void> lock = platform == DbPlatform.POSTGRESQL ?
+                databaseClient.sql("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")").then() :
+                Mono.empty();
+
+        return lock.then(work).as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Применение одной миграции: скрипт и запись о версии - в одной транзакции.
+     * Версия проверяется повторно под блокировкой - её мог применить другой экземпляр.
+     */
+    private Mono<Void> apply(int version, Resource script, String checksum) {
+        Mono<Void> migration = databaseClient.sql("SELECT COUNT(*) AS cnt FROM schema_version WHERE version = :version")
+                .bind("version", version)
+                .map(row -> row.get("cnt", Long.class))
+                .one()
+                .flatMap(count -> {
+                    if (count > 0)
+                        return Mono.<Void>empty();
+
+                    log.info("Applying migration {}.", script.getFilename());
+                    return databaseClient.inConnection(connection -> ScriptUtils.executeSqlScript(connection,
+                                    new EncodedResource(script, StandardCharsets.UTF_8)))
+                            .then(databaseClient.sql("INSERT INTO schema_version (version, description, checksum) " +
+                                                     "VALUES (:version, :description, :checksum)")
+                                                .bind("version", version)
+                                                .bind("description", description(script))
+                                                .bind("checksum", checksum)
+                                                .then());
+                });
+
+        return locked(migration);
+    }
+
+    /**
+     * Скрипты всех каталогов по версиям (версия должна быть уникальной среди всех каталогов)
+     */
+    private SortedMap<Integer, Resource> findScripts() throws IOException {
+        String vendor = platform.name().toLowerCase();
+        SortedMap<Integer, Resource> scripts = new TreeMap<>();
+
+        for (String location : locations) {
+            String path = location.trim().replace("{vendor}", vendor);
+            for (Resource resource : resourceResolver.getResources(path + "/V*__*.sql")) {
+                Matcher matcher = SCRIPT_NAME.matcher(Objects.requireNonNull(resource.getFilename()));
+                if (!matcher.matches())
+                    continue;
+
+                Resource duplicate = scripts.put(Integer.parseInt(matcher.group(1)), resource);
+                if (duplicate != null)
+                    throw new IllegalStateException("Duplicate migration version: " +
+                                                    duplicate.getFilename() + ", " + resource.getFilename());
+            }
+        }
+        return scripts;
+    }
+
+    private static String description(Resource script) {
+        Matcher matcher = SCRIPT_NAME.matcher(Objects.requireNonNull(script.getFilename()));
+        return matcher.matches() ? matcher.group(2).replace('_', ' ') : script.getFilename();
+    }
+
+    private static String checksum(Resource script) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(script.getContentAsByteArray());
+            return HexFormat.of().formatHex(hash);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Can't read migration " + script.getFilename(), e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.intershop.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
+import ru.yandex.practicum.intershop.model.CatalogFormat;
+import ru.yandex.practicum.intershop.service.ImportService;
+
+import java.net.URI;
+
+/**
+ * Контроллер массового импорта каталога
+ */
+@Tag(name = "ImportController", description = "Контроллер массового импорта каталога")
+@Slf4j
+@RestController
+@RequestMapping("/import/wares")
+public class ImportController {
+    private static final String TEXT_CSV = "text/csv";
+    private static final String APPLICATION_ZIP = "application/zip";
+
+    private final ImportService serv;
+
+    public ImportController(ImportService serv) {
+        this.serv = serv;
+    }
+
+    /**
+     * POST "/import/wares" - запуск импорта каталога
+     * 	Тело запроса (передаётся потоком):
+     * 		text/csv - каталог с заголовком title,description,price,image
+     * 		application/x-ndjson - каталог по объекту {"title", "description", "price", "image"} в строке
+     * 		application/zip - архив с catalog.csv или catalog.ndjson и файлами картинок (image - путь в архиве)
+     * @return 202 и состояние задачи импорта; ход импорта - по адресу из заголовка Location
+     */
+    @Operation(summary = "Запуск массового импорта каталога")
+    @PostMapping(consumes = {TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE, APPLICATION_ZIP})
+    public Mono<ResponseEntity<ImportProgressDTO>> startImport(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                               @RequestBody Flux<DataBuffer> content) {
+        log.info("Post startImport contentType={}", contentType);
+
+        boolean archive = contentType.isCompatibleWith(MediaType.parseMediaType(APPLICATION_ZIP));
+        CatalogFormat format = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON) ?
+                CatalogFormat.NDJSON : CatalogFormat.CSV;
+
+        return serv.startImport(format, archive, content)
+                   .map(progress -> ResponseEntity.accepted()
+                                                  .location(URI.create("/import/wares/" + progress.getId()))
+                                                  .body(progress))
+                   .onErrorMap(DataBufferLimitException.class,
+                               e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage()));
+    }
+
+    /**
+     * GET "/import/wares/{id}" - ход импорта
+     * @param id - идентификатор задачи импорта
+     * @return Состояние задачи импорта
+     */
+    @Operation(summary = "Ход массового импорта каталога")
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ImportProgressDTO>> getProgress(@Parameter(description = "ID задачи импорта", required = true)
+                                                               @PathVariable(name = "id") String id) {
+        log.debug("Get getProgress id={}", id);
+
+        return serv.getProgress(id)
+                   .map(ResponseEntity::ok)
+                   .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
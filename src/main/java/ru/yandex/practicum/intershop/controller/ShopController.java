@@ -4,23 +4,42 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.result.view.Rendering;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import ru.yandex.practicum.intershop.dto.InWareDTO;
 import ru.yandex.practicum.intershop.dto.ItemDTO;
+import ru.yandex.practicum.intershop.model.ImageVariant;
 import ru.yandex.practicum.intershop.model.ItemAction;
 import ru.yandex.practicum.intershop.model.SortKind;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
 import ru.yandex.practicum.intershop.model.Paging;
 import ru.yandex.practicum.intershop.service.ShopService;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -32,6 +51,8 @@ import java.util.stream.IntStream;
 @Controller
 @RequestMapping("/")
 public class ShopController {
+    private static final Duration IMAGE_MAX_AGE = Duration.ofDays(365);
+
     private final ShopService serv;
 
     public ShopController(ShopService serv) {
@@ -52,7 +73,7 @@ public class ShopController {
      * б) GET "/main/items" - список всех товаров плиткой на главной странице
      * 		Параметры:
      * 			search - строка с поисков по названию/описанию товара (по умолчанию, пустая строка - все товары)
-     *     		sort - сортировка перечисление NO, ALPHA, PRICE (по умолчанию, NO - не использовать сортировку)
+     *     		sort - сортировка перечисление NO, ALPHA, PRICE, RELEVANCE (по умолчанию, NO - не использовать сортировку)
      *     		pageSize - максимальное число товаров на странице (по умолчанию, 10)
      *     		pageNumber - номер текущей страницы (по умолчанию, 1)
      *     	Возвращает:
@@ -60,7 +81,7 @@ public class ShopController {
      *     		используется модель для заполнения шаблона:
      *     			"items" - List<List<Item>> - список товаров по N в ряд (id, title, decription, imgPath, count, price)
      *     			"search" - строка поиска (по умолчанию, пустая строка - все товары)
-     *     			"sort" - сортировка перечисление NO, ALPHA, PRICE (по умолчанию, NO - не использовать сортировку)
+     *     			"sort" - сортировка перечисление NO, ALPHA, PRICE, RELEVANCE (по умолчанию, NO - не использовать сортировку)
      *     			"paging":
      *     				"pageNumber" - номер текущей страницы (по умолчанию, 1)
      *     				"pageSize" - максимальное число товаров на странице (по умолчанию, 10)
@@ -77,7 +98,7 @@ public class ShopController {
                                        @RequestParam(name = "pageSize", required = false, defaultValue = "10") Integer pageSize,
                                        @Parameter(description = "Номер страницы", required = false)
                                        @RequestParam(name = "pageNumber", required = false, defaultValue = "1") Integer pageNumber) {
-        log.info("Get getMainPage.");
+        log.debug("Get getMainPage.");
 
         Mono<Page<ItemDTO>> page = serv.findAllItemsPaginated(search,
                                                         SortKind.valueOf(sort),
@@ -113,7 +134,7 @@ public class ShopController {
                                                 @Parameter(description = "Действие над количеством товара в корзине", required = true)
                                                 @RequestPart("action") String action){
 
-        log.info("Post mainPageAmountChange id - {}, action - {}", id, action);
+        log.debug("Post mainPageAmountChange id - {}, action - {}", id, action);
 
         return serv.changeItemAmount(id, ItemAction.valueOf(action))
                    .thenReturn(Rendering.redirectTo("/main/items").build());
@@ -127,11 +148,12 @@ public class ShopController {
      * 			"items" - List<Item> - список товаров в корзине (id, title, decription, imgPath, count, price)
      * 			"total" - суммарная стоимость заказа
      * 			"empty" - true, если в корзину не добавлен ни один товар
+     * 			"checkoutToken" - токен оформления для формы покупки
      */
     @Operation(summary = "Вывод товаров корзины")
     @GetMapping("/cart/items")
     public Mono<Rendering> getCart() {
-        log.info("Get getCart.");
+        log.debug("Get getCart.");
 
 
         return serv.getOrder()
@@ -140,6 +162,7 @@ public class ShopController {
                                 .modelAttribute("items", o.getItems())
                                 .modelAttribute("total", o.getTotalSum())
                                 .modelAttribute("empty", o.getItems().isEmpty())
+                                .modelAttribute("checkoutToken", UUID.randomUUID().toString())
                                 .build())
                         .flatMap(Mono::just);
     }
@@ -157,7 +180,7 @@ public class ShopController {
                                                 @PathVariable("id") Long id,
                                                 @Parameter(description = "Действие над количеством товара в корзине", required = true)
                                                 @RequestPart("action") String action){
-        log.info("Post cartPageAmountChange id - {}, action - {}", id, action);
+        log.debug("Post cartPageAmountChange id - {}, action - {}", id, action);
 
         return serv.changeItemAmount(id, ItemAction.valueOf(action))
                    .thenReturn(Rendering.redirectTo("/cart/items").build());
@@ -174,7 +197,7 @@ public class ShopController {
     @GetMapping("/items/{id}")
     public Mono<Rendering> getItem(@Parameter(description = "ID товара", required = true)
                                    @PathVariable(name = "id") Long id){
-        log.info("Get getItem id - {}", id);
+        log.debug("Get getItem id - {}", id);
 
         return serv.getItem(id)
                    .map(i -> Rendering.view("item")
@@ -196,7 +219,7 @@ public class ShopController {
                                                 @PathVariable("id") Long id,
                                                 @Parameter(description = "Действие над количеством товара в корзине", required = true)
                                                 @RequestPart("action") String action){
-        log.info("Post itemPageAmountChange id - {}, action - {}", id, action);
+        log.debug("Post itemPageAmountChange id - {}, action - {}", id, action);
 
         return serv.changeItemAmount(id, ItemAction.valueOf(action))
                    .thenReturn(Rendering.redirectTo("/items/" + id).build());
@@ -204,41 +227,56 @@ public class ShopController {
 
     /**
      *з) POST "/buy" - купить товары в корзине (выполняет покупку товаров в корзине и очищает ее)
+     * 	Параметры:
+     * 		token - токен оформления, выданный страницей корзины (повторная отправка не оформляет заказ повторно)
      *	Возвращает:
      *		редирект на "/orders/{id}?newOrder=true"
      */
     @Operation(summary = "Совершение покупки")
     @PostMapping("/buy")
-    public Mono<Rendering> buy(){
-        log.info("Get buy ");
+    public Mono<Rendering> buy(@Parameter(description = "Токен оформления (защита от повторной отправки)")
+                               @RequestParam(name = "token", required = false) String token){
+        log.info("Get buy token - {}", token);
 
-        return serv.getOrder()
-                   .flatMap(o -> serv.buy()
-                                     .thenReturn(Rendering.redirectTo("/orders/" + o.getId() + "?newOrder=true")
-                                                          .build()
-                                      )
-                    );
+        return serv.buy(token)
+                   .map(orderId -> Rendering.redirectTo("/orders/" + orderId + "?newOrder=true").build())
+                   .defaultIfEmpty(Rendering.redirectTo("/cart/items").build());
     }
 
     /**
-     * и) GET "/orders" - список заказов
+     * и) GET "/orders" - список заказов (постранично, от новых к старым)
+     * 	Параметры:
+     * 		before - курсор: вывести заказы с идентификатором меньше заданного (по умолчанию, с последнего заказа)
+     * 		size - максимальное число заказов на странице (по умолчанию, 10)
+     * 		summary - true, если нужны только количество товаров и сумма без списка товаров (по умолчанию, false)
      *	Возвращает:
      * 		шаблон "orders.html"
      * 		используется модель для заполнения шаблона:
      * 			"orders" - List<Order> - список заказов
      * 				"id" - идентификатор заказа
      *      	 "items" - List<Item> - список товаров в заказе (id, title, decription, imgPath, count, price)
+     *      	 "itemCount" - количество товаров в заказе (в режиме сводки)
+     *      	"nextCursor" - курсор следующей страницы (null, если страница последняя)
+     *      	"size" - размер страницы
+     *      	"summary" - режим сводки
      */
     @Operation(summary = "Получение списка заказов")
     @GetMapping("/orders")
-    public Mono<Rendering> getOrders(){
-        log.info("Get getOrders");
-
-        return serv.getAllOrders()
-                   .collectList()
-                   .map(lo -> Rendering.view("orders")
-                                       .modelAttribute("orders", lo)
-                                       .build()
+    public Mono<Rendering> getOrders(@Parameter(description = "Курсор страницы", required = false)
+                                     @RequestParam(name = "before", required = false) Long before,
+                                     @Parameter(description = "Размер страницы", required = false)
+                                     @RequestParam(name = "size", required = false, defaultValue = "10") Integer size,
+                                     @Parameter(description = "Режим сводки", required = false)
+                                     @RequestParam(name = "summary", required = false, defaultValue = "false") Boolean summary){
+        log.debug("Get getOrders before={}, size={}, summary={}", before, size, summary);
+
+        return serv.getOrders(before, size, summary)
+                   .map(p -> Rendering.view("orders")
+                                      .modelAttribute("orders", p.getOrders())
+                                      .modelAttribute("nextCursor", p.getNextCursor())
+                                      .modelAttribute("size", size)
+                                      .modelAttribute("summary", summary)
+                                      .build()
                    );
     }
 
@@ -260,7 +298,7 @@ public class ShopController {
                                     @PathVariable(name = "id") Long id,
                                     @Parameter(description = "Признак нового заказа", required = false)
                                     @RequestParam(name ="newOrder", required = false, defaultValue = "false") String newOrder){
-        log.info("Get getOrder id {}", id);
+        log.debug("Get getOrder id {}", id);
 
         return serv.getOrder(id)
                    .map(o -> Rendering.view("order")
@@ -271,19 +309,105 @@ public class ShopController {
     }
 
     /**
-     * е) GET "/images/{id}" -эндпоинт, возвращающий набор байт картинки поста
+     * е) GET "/images/{id}" - эндпоинт, возвращающий картинку товара
      * 	Параметры:
+     * 		v - версия картинки (хэш содержимого); при совпадении ответ кэшируется клиентом/CDN бессрочно
+     * 		size - вариант ORIGINAL, THUMB, MEDIUM (по умолчанию, ORIGINAL - исходная картинка; другой - 400);
+     * 		       пока уменьшенный вариант не построен, отдаётся исходная картинка без бессрочного кэширования
+     * 	Поддерживаются условные запросы (If-None-Match/If-Modified-Since -> 304) и запросы диапазонов (Range -> 206).
+     * 	Условные запросы обслуживаются только по метаданным, без чтения байт картинки;
+     * 	байты отдаются потоком частей из базы, картинка целиком в памяти не собирается.
+     * 	Для картинок без хэша (загруженных до его появления) ETag не выдаётся, без типа - отдаётся octet-stream.
      * @param id - идентификатор товара
-     * @return Массив байт картинки
+     * @return Картинка
      */
-    @Operation(summary = "Получение изображения товара в виде набора байт.")
+    @Operation(summary = "Получение изображения товара")
     @GetMapping("/images/{id}")
-    public @ResponseBody Mono<byte[]> getImage(@Parameter(description = "ID товара", required = true)
-                                               @PathVariable(name = "id") Long id) throws IOException {
-        log.info("Get getImage id={}", id);
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getImage(@Parameter(description = "ID товара", required = true)
+                                                           @PathVariable(name = "id") Long id,
+                                                           @Parameter(description = "Версия картинки", required = false)
+                                                           @RequestParam(name = "v", required = false) String version,
+                                                           @Parameter(description = "Вариант картинки", required = false)
+                                                           @RequestParam(name = "size", required = false, defaultValue = "ORIGINAL") String size,
+                                                           ServerWebExchange exchange) {
+        log.debug("Get getImage id={}, v={}, size={}", id, version, size);
+
+        ImageVariant requested;
+        try {
+            requested = ImageVariant.valueOf(size);
+        } catch (IllegalArgumentException e) {               //Неизвестный вариант - ошибка запроса, а не сервера
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown image size: " + size));
+        }
+        Mono<Tuple2<WareImageInfo, ImageVariant>> variant = requested == ImageVariant.ORIGINAL ?
+                Mono.empty() :
+                serv.getImageInfo(id, requested).map(info -> Tuples.of(info, requested));
+
+        return variant.switchIfEmpty(Mono.defer(() -> serv.getImageInfo(id)   //Варианта ещё нет - исходная картинка
+                                                          .map(info -> Tuples.of(info, ImageVariant.ORIGINAL))))
+                   .map(found -> {
+                       WareImageInfo info = found.getT1();
+                       ImageVariant served = found.getT2();
+                       String eTag = info.contentHash() == null ? null :
+                               "\"" + info.contentHash() + (served == ImageVariant.ORIGINAL ? "" : "-" + served.name()) + "\"";
+                       Instant lastModified = info.createdAt() == null ?
+                               Instant.EPOCH : info.createdAt().atZone(ZoneId.systemDefault()).toInstant();
+
+                       //URL с актуальной версией неизменяем - его можно кэшировать бессрочно,
+                       //иначе клиент должен перепроверять картинку по ETag
+                       CacheControl cacheControl = info.contentHash() != null && info.contentHash().equals(version) &&
+                                                   served == requested ?
+                               CacheControl.maxAge(IMAGE_MAX_AGE).cachePublic().immutable() :
+                               CacheControl.noCache().cachePublic();
+
+                       if (eTag == null ? exchange.checkNotModified(lastModified) : exchange.checkNotModified(eTag, lastModified))
+                           return validators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag, lastModified, cacheControl)
+                                   .<Flux<DataBuffer>>build();
+
+                       HttpHeaders headers = exchange.getRequest().getHeaders();
+                       List<HttpRange> ranges = headers.getRange();
+                       String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+                       if (ranges.size() != 1 || (ifRange != null && !ifRange.equals(eTag)))  //Отдать картинку целиком
+                           return validators(ResponseEntity.ok(), eTag, lastModified, cacheControl)
+                                   .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                                   .contentType(mediaType(info.contentType()))
+                                   .contentLength(info.size())
+                                   .body(serv.readImage(info, served, 0, info.size()));
+
+                       long first = ranges.get(0).getRangeStart(info.size());
+                       long last = ranges.get(0).getRangeEnd(info.size());
+                       if (first >= info.size() || last < first)              //Диапазон за пределами картинки
+                           return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + info.size())
+                                                .<Flux<DataBuffer>>build();
+                       return validators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), eTag, lastModified, cacheControl)
+                               .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                               .header(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + info.size())
+                               .contentType(mediaType(info.contentType()))
+                               .contentLength(last - first + 1)
+                               .body(serv.readImage(info, served, first, last - first + 1));
+                   })
+                   .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
 
-        Mono<byte[]> imgBytes = serv.getImage(id);
-        return imgBytes;
+    /**
+     * Заголовки проверки актуальности картинки (ETag - только если известен хэш)
+     */
+    private static ResponseEntity.BodyBuilder validators(ResponseEntity.BodyBuilder builder, String eTag,
+                                                         Instant lastModified, CacheControl cacheControl) {
+        if (eTag != null)
+            builder.eTag(eTag);
+        return builder.lastModified(lastModified).cacheControl(cacheControl);
+    }
+
+    /**
+     * Тип содержимого картинки (неизвестный или некорректный - octet-stream)
+     */
+    private static MediaType mediaType(String contentType) {
+        try {
+            return contentType == null ? MediaType.APPLICATION_OCTET_STREAM : MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 
     @Operation(summary = "Возвращает форму добавления товара")
@@ -306,14 +430,17 @@ public class ShopController {
                                    @RequestPart("image") FilePart image) throws IOException {
         log.info("Post addWare title={}, description={}, price={}, image={}", title, description, price, image);
 
-        return DataBufferUtils.join(image.content())
-                .map(dataBuffer -> dataBuffer.asByteBuffer().array())
-                .flatMap(img -> serv.addWare(InWareDTO.builder()
-                                                        .title(title)
-                                                        .description(description)
-                                                        .price(Float.parseFloat(price))
-                                                        .image(img)
-                                                        .build()))
+        //Картинка передаётся потоком частей - без склейки всей загрузки в памяти
+        return serv.addWare(InWareDTO.builder()
+                                     .title(title)
+                                     .description(description)
+                                     .price(Float.parseFloat(price))
+                                     .imageContentType(image.headers().getContentType() == null ?
+                                             null : image.headers().getContentType().toString())
+                                     .build(),
+                            image.content())
+                .onErrorMap(DataBufferLimitException.class,
+                            e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage()))
                 .thenReturn(Rendering.redirectTo("/add/ware").build());
     }
 }
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.intershop.dto;
+
+import lombok.*;
+import ru.yandex.practicum.intershop.model.ImportStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ход массового импорта каталога
+ */
+@Getter
+@Setter
+@Builder
+public class ImportProgressDTO {
+    private String id;                  //Идентификатор задачи импорта
+    private ImportStatus status;
+    private long rows;                  //Прочитано строк каталога
+    private long imported;              //Записано товаров
+    private long failed;                //Отклонено строк
+    private long batches;               //Записано пачек
+    private String lastError;           //Последняя ошибка (строка каталога или причина остановки)
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
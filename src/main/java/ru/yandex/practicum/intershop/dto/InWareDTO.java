@@ -10,5 +10,6 @@ public class InWareDTO {
     private String title;
     private String description;
     private byte[] image;
+    private String imageContentType;
     private float price;
 }
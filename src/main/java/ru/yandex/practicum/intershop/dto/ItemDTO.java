@@ -10,6 +10,7 @@ public class ItemDTO {
     private String title;
     private String description;
     private long imageId;
+    private String imageVersion;        //Версия картинки для кэшируемого URL
     private float price;
     private int count;
 }
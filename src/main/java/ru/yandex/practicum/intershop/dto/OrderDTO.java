@@ -2,6 +2,7 @@ package ru.yandex.practicum.intershop.dto;
 
 import ru.yandex.practicum.intershop.model.OrderStatus;
 
+import java.math.BigDecimal;
 import java.util.List;
 import lombok.*;
 
@@ -12,5 +13,6 @@ public class OrderDTO {
     private long id;                    //Идентификатор заказа
     private OrderStatus stat;
     private List<ItemDTO> items;
-    private float totalSum;
+    private BigDecimal totalSum;
+    private long itemCount;             //Общее количество товаров (заполняется в режиме сводки)
 }
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.intershop.dto;
+
+import java.util.List;
+import lombok.*;
+
+/**
+ * Страница истории заказов (курсорная пагинация по идентификатору заказа)
+ */
+@Getter
+@Setter
+@Builder
+public class OrderPageDTO {
+    private List<OrderDTO> orders;      //Заказы страницы (по убыванию идентификатора)
+    private Long nextCursor;            //Курсор следующей страницы (null - страница последняя)
+}
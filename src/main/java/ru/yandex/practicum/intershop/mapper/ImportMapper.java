@@ -0,0 +1,23 @@
+package ru.yandex.practicum.intershop.mapper;
+
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
+import ru.yandex.practicum.intershop.model.ImportJob;
+
+public class ImportMapper {
+    public static ImportProgressDTO toProgressDTO(ImportJob job) {
+        if (job != null) {
+            return ImportProgressDTO.builder()
+                    .id(job.getId())
+                    .status(job.getStatus())
+                    .rows(job.getRows().get())
+                    .imported(job.getImported().get())
+                    .failed(job.getFailed().get())
+                    .batches(job.getBatches().get())
+                    .lastError(job.getLastError())
+                    .startedAt(job.getStartedAt())
+                    .finishedAt(job.getFinishedAt())
+                    .build();
+        }
+        return null;
+    }
+}
@@ -26,10 +26,28 @@ public class ItemMapper {
                     .title(ware.getTitle())
                     .description(ware.getDescription())
                     .imageId(ware.getId())
+                    .imageVersion(ware.getImageHash())
                     .price(ware.getPrice())
                     .count(0)
                     .build();
         }
         return null;
     }
+
+    /**
+     * Элемент заказа: товар из справочника с зафиксированными при оформлении названием и ценой
+     * (если товара в справочнике уже нет - только по зафиксированным данным)
+     */
+    public static ItemDTO toItemDTO(Ware ware, Item item){
+        if (item.getUnitPrice() == null)                //Заказ ещё не оформлен - по текущему товару
+            return toItemDTO(ware);
+
+        ItemDTO ret = ware != null ?
+                toItemDTO(ware) :
+                ItemDTO.builder().id(item.getWareId()).imageId(item.getWareId()).build();
+        ret.setPrice(item.getUnitPrice().floatValue());
+        if (item.getTitle() != null)
+            ret.setTitle(item.getTitle());
+        return ret;
+    }
 }
@@ -2,6 +2,10 @@ package ru.yandex.practicum.intershop.mapper;
 
 import ru.yandex.practicum.intershop.dto.OrderDTO;
 import ru.yandex.practicum.intershop.model.Order;
+import ru.yandex.practicum.intershop.model.OrderStatus;
+import ru.yandex.practicum.intershop.model.OrderSummary;
+
+import java.math.BigDecimal;
 
 import java.util.List;
 
@@ -11,9 +15,23 @@ public class OrderMapper {
             OrderDTO ret = OrderDTO.builder()
                     .id(order.getId())
                     .stat(order.getStat())
+                    .totalSum(order.getStat() == OrderStatus.NEW ? null : order.getTotalAmount())
+                    .itemCount(order.getItemCount() == null ? 0 : order.getItemCount())
                     .build();
             return ret;
         }
         return null;
     }
+
+    public static OrderDTO toOrderDTO(OrderSummary summary){
+        if (summary != null){
+            return OrderDTO.builder()
+                    .id(summary.id())
+                    .stat(summary.stat())
+                    .itemCount(summary.itemCount())
+                    .totalSum(summary.totalSum() == null ? BigDecimal.ZERO : summary.totalSum())
+                    .build();
+        }
+        return null;
+    }
 }
@@ -12,7 +12,6 @@ public class WareMapper {
             ret.setTitle(ware.getTitle());
             ret.setDescription(ware.getDescription());
             ret.setPrice(ware.getPrice());
-            ret.setImage(ware.getImage());
 
             return ret;
         }
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.intershop.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.binder.netty4.NettyAllocatorMetrics;
+import io.netty.buffer.PooledByteBufAllocator;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import reactor.core.Scannable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Метрики приложения (публикуются в формате Prometheus на /actuator/prometheus):
+ * вызовы репозиториев, пулы потоков Reactor Schedulers, HTTP сервер и буферы Netty.
+ * Время обработки каждого endpoint контроллера - стандартная метрика http.server.requests.
+ */
+@Configuration
+public class MetricsConfiguration {
+    private static final String SCHEDULERS_DECORATOR = "intershop-metrics";
+
+    /**
+     * Замер всех вызовов репозиториев (в т.ч. методов фрагментов) - совет добавляется в прокси репозитория
+     */
+    @Bean
+    public static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean)
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(
+                                    new RepositoryTimingInterceptor(registry.getObject(),
+                                                                    information.getRepositoryInterface()
+                                                                               .getSimpleName()))));
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Пулы потоков Reactor Schedulers (boundedElastic, parallel, ...): очередь, активные задачи, время выполнения
+     */
+    @Bean
+    public Object schedulersMetrics(MeterRegistry registry) {
+        AtomicInteger executors = new AtomicInteger();
+        Schedulers.addExecutorServiceDecorator(SCHEDULERS_DECORATOR, (scheduler, service) ->
+                ExecutorServiceMetrics.monitor(registry,
+                                               service,
+                                               Scannable.from(scheduler).name() + "-" + executors.incrementAndGet(),
+                                               "reactor"));
+        return SCHEDULERS_DECORATOR;
+    }
+
+    @PreDestroy
+    public void removeSchedulersMetrics() {
+        Schedulers.removeExecutorServiceDecorator(SCHEDULERS_DECORATOR);
+    }
+
+    /**
+     * Метрики HTTP сервера Reactor Netty (соединения, объём данных); идентификаторы в пути схлопываются
+     */
+    @Bean
+    public NettyServerCustomizer nettyMetricsCustomizer() {
+        return httpServer -> httpServer.metrics(true, uri -> uri.replaceAll("/\\d+", "/{id}"));
+    }
+
+    /**
+     * Пул буферов Netty (общий для сервера и клиентов Redis/PostgreSQL)
+     */
+    @Bean
+    public NettyAllocatorMetrics nettyAllocatorMetrics() {
+        return new NettyAllocatorMetrics(PooledByteBufAllocator.DEFAULT);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.intershop.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Замер вызовов репозитория: для реактивных результатов время считается
+ * от подписки до завершения (т.е. реальное время запроса к базе), а не до сборки цепочки
+ */
+public class RepositoryTimingInterceptor implements MethodInterceptor {
+    static final String METRIC = "intershop.db.calls";
+
+    private final MeterRegistry registry;
+    private final String repository;
+
+    public RepositoryTimingInterceptor(MeterRegistry registry, String repository) {
+        this.registry = registry;
+        this.repository = repository;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        Object result = invocation.proceed();
+
+        if (result instanceof Mono<?> mono)
+            return Mono.defer(() -> {
+                Timer.Sample sample = Timer.start(registry);
+                return mono.doFinally(signal -> sample.stop(timer(method, signal)));
+            });
+        if (result instanceof Flux<?> flux)
+            return Flux.defer(() -> {
+                Timer.Sample sample = Timer.start(registry);
+                return flux.doFinally(signal -> sample.stop(timer(method, signal)));
+            });
+        return result;
+    }
+
+    private Timer timer(String method, SignalType signal) {
+        String outcome = switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+        return Timer.builder(METRIC)
+                .description("Вызовы репозиториев (запросы к базе)")
+                .tags("repository", repository, "method", method, "outcome", outcome)
+                .register(registry);
+    }
+}
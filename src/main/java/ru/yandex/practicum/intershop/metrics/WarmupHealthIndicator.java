@@ -0,0 +1,27 @@
+package ru.yandex.practicum.intershop.metrics;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.intershop.service.WarmupService;
+
+/**
+ * Готовность экземпляра принимать трафик: до окончания первого прогрева кэша каталога - OUT_OF_SERVICE.
+ * Входит в группу readiness (/actuator/health/readiness), поэтому балансировщик не направляет
+ * запросы на холодный экземпляр. Последующие прогревы (после изменения каталога) готовность не снимают.
+ */
+@Component("catalogWarmup")
+public class WarmupHealthIndicator implements HealthIndicator {
+    private final WarmupService warmupServ;
+
+    public WarmupHealthIndicator(WarmupService warmupServ) {
+        this.warmupServ = warmupServ;
+    }
+
+    @Override
+    public Health health() {
+        return warmupServ.isWarm() ?
+                Health.up().build() :
+                Health.outOfService().withDetail("reason", "catalog cache warm-up in progress").build();
+    }
+}
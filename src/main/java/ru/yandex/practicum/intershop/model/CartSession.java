@@ -0,0 +1,55 @@
+package ru.yandex.practicum.intershop.model;
+
+import org.springframework.web.server.WebSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Корзина посетителя: владелец активного заказа и истории заказов (идентификатор из постоянной cookie)
+ * и закэшированный в веб-сессии идентификатор активного заказа.
+ * Передаётся в сервис через контекст Reactor (см. CartSessionFilter).
+ */
+public class CartSession {
+    public static final String DEFAULT_ID = "default";          //Сессия вызовов вне веб-запроса
+    private static final String ORDER_ID_ATTR = "CART_ORDER_ID:";  //+ владелец корзины
+
+    private final String id;
+    private final Map<String, Object> attributes;
+
+    private CartSession(String id, Map<String, Object> attributes) {
+        this.id = id;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Корзина посетителя - идентификатор заказа кэшируется в атрибутах веб-сессии
+     * @param cartId    Владелец корзины (постоянный идентификатор посетителя)
+     * @param session   Веб-сессия
+     */
+    public static CartSession of(String cartId, WebSession session) {
+        return new CartSession(cartId, session.getAttributes());
+    }
+
+    /**
+     * Корзина по умолчанию (вне веб-запроса) - идентификатор заказа не кэшируется между вызовами
+     */
+    public static CartSession anonymous() {
+        return new CartSession(DEFAULT_ID, new HashMap<>());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getOrderId() {
+        return (Long) attributes.get(ORDER_ID_ATTR + id);
+    }
+
+    public void setOrderId(Long orderId) {
+        if (orderId == null)
+            attributes.remove(ORDER_ID_ATTR + id);
+        else
+            attributes.put(ORDER_ID_ATTR + id, orderId);
+    }
+}
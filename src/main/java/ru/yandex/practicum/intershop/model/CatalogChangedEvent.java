@@ -0,0 +1,10 @@
+package ru.yandex.practicum.intershop.model;
+
+/**
+ * Событие изменения каталога на этом экземпляре (публикуется после перехода на новое поколение кэша)
+ * @param version   новое поколение кэша страниц поиска
+ */
+public record CatalogChangedEvent(
+        long    version
+)
+{}
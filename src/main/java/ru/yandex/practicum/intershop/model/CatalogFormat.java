@@ -0,0 +1,9 @@
+package ru.yandex.practicum.intershop.model;
+
+/**
+ * Формат файла каталога для массового импорта
+ */
+public enum CatalogFormat {
+    CSV,        //заголовок title,description,price,image и строки в том же порядке столбцов
+    NDJSON      //по объекту {"title", "description", "price", "image"} в строке
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.intershop.model;
+
+/**
+ * Строка каталога массового импорта
+ * @param title         название товара
+ * @param description   описание товара
+ * @param price         цена товара
+ * @param image         имя файла картинки в архиве импорта (может быть пустым)
+ */
+public record CatalogRow(
+        String  title,
+        String  description,
+        Float   price,
+        String  image
+)
+{}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.intershop.model;
+
+/**
+ * Варианты изображения товара: исходная картинка и уменьшенные копии
+ * (по наибольшей стороне, с сохранением пропорций)
+ */
+public enum ImageVariant {
+    ORIGINAL(0),
+    THUMB(300),     //плитки каталога, корзины и заказа
+    MEDIUM(600);    //карточка товара (с запасом для экранов высокой плотности)
+
+    private final int maxSide;
+
+    ImageVariant(int maxSide) {
+        this.maxSide = maxSide;
+    }
+
+    public int getMaxSide() {
+        return maxSide;
+    }
+}
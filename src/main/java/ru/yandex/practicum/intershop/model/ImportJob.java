@@ -0,0 +1,38 @@
+package ru.yandex.practicum.intershop.model;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Состояние задачи массового импорта каталога (счётчики обновляются по мере записи пачек)
+ */
+@Getter
+public class ImportJob {
+    private final String id;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final AtomicLong rows = new AtomicLong();           //Прочитано строк каталога
+    private final AtomicLong imported = new AtomicLong();       //Записано товаров
+    private final AtomicLong failed = new AtomicLong();         //Отклонено строк
+    private final AtomicLong batches = new AtomicLong();        //Записано пачек
+    private volatile ImportStatus status = ImportStatus.RUNNING;
+    private volatile String lastError;
+    private volatile LocalDateTime finishedAt;
+
+    public ImportJob(String id) {
+        this.id = id;
+    }
+
+    public void rejected(long line, String reason) {
+        failed.incrementAndGet();
+        lastError = "line " + line + ": " + reason;
+    }
+
+    public void finish(ImportStatus status, String error) {
+        if (error != null)
+            lastError = error;
+        this.finishedAt = LocalDateTime.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.intershop.model;
+
+public enum ImportStatus {
+    RUNNING,
+    DONE,
+    FAILED
+}
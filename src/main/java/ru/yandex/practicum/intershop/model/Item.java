@@ -4,6 +4,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 import lombok.*;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
@@ -21,6 +22,8 @@ public class Item {
     private long orderId;
     private long wareId;
     private int count;
+    private BigDecimal unitPrice;       //Цена товара на момент оформления заказа
+    private String title;               //Название товара на момент оформления заказа
     private LocalDateTime createdAt;
 
     public Item (long orderId, long wareId, int count) {
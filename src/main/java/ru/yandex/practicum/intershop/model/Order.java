@@ -4,6 +4,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 import lombok.*;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
@@ -18,5 +19,9 @@ public class Order {
     @Id
     private long id;                    //Идентификатор заказа
     private OrderStatus stat;
+    private String sessionId;           //Сессия, которой принадлежит заказ
+    private BigDecimal totalAmount;     //Сумма заказа (поддерживается при изменении корзины, фиксируется при оформлении)
+    private Integer itemCount;          //Общее количество товаров в заказе
+    private String checkoutToken;       //Токен оформления (повторная отправка не оформляет заказ повторно)
     private LocalDateTime createdAt;
 }
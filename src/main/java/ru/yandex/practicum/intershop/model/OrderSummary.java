@@ -0,0 +1,18 @@
+package ru.yandex.practicum.intershop.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Сводка по заказу (без списка элементов)
+ * @param id        идентификатор заказа
+ * @param stat      статус заказа
+ * @param itemCount общее количество товаров в заказе
+ * @param totalSum  общая стоимость заказа
+ */
+public record OrderSummary(
+        long        id,
+        OrderStatus stat,
+        long        itemCount,
+        BigDecimal  totalSum
+)
+{}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.intershop.model;
+
+import java.util.List;
+
+/**
+ * Страница выборки товаров вместе с общим количеством (хранятся в кэше под одним ключом)
+ * @param ids       идентификаторы товаров страницы (в порядке сортировки)
+ * @param total     общее количество найденных товаров (-1, если не считалось)
+ * @param hasNext   есть ли следующая страница
+ */
+public record SearchPage(
+        List<Long>  ids,
+        long        total,
+        boolean     hasNext
+)
+{}
@@ -3,5 +3,6 @@ package ru.yandex.practicum.intershop.model;
 public enum SortKind {
     NO,
     ALPHA,
-    PRICE
+    PRICE,
+    RELEVANCE   //по релевантности поиску (без строки поиска - как NO)
 }
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.intershop.model;
+
+/**
+ * Количество товара в корзине (без загрузки самого товара)
+ * @param wareId    идентификатор товара
+ * @param count     количество в корзине
+ */
+public record WareCount(
+        long wareId,
+        int  count
+)
+{}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.intershop.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Класс изображения товара (хранится отдельно от товара, чтобы не тянуть
+ * байты картинки в списки, корзину и кэш товаров)
+ */
+@Table(name = "ware_images")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WareImage {
+    @Id
+    private long id;                    //Идентификатор изображения
+    private long wareId;
+    private byte[] image;
+    private String contentType;         //MIME тип картинки
+    private String contentHash;         //SHA-256 содержимого (считается один раз при загрузке)
+    private long size;                  //Размер картинки в байтах
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.intershop.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Метаданные изображения товара (без самих байт картинки)
+ * @param wareId        идентификатор товара
+ * @param contentType   MIME тип картинки
+ * @param contentHash   SHA-256 содержимого (используется как ETag и версия в URL)
+ * @param size          размер картинки в байтах
+ * @param createdAt     время загрузки (используется как Last-Modified)
+ */
+public record WareImageInfo(
+        long            wareId,
+        String          contentType,
+        String          contentHash,
+        long            size,
+        LocalDateTime   createdAt
+)
+{}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.intershop.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Уменьшенный вариант изображения товара (см. ImageVariant)
+ */
+@Table(name = "ware_image_variants")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WareImageVariant {
+    @Id
+    private long id;                    //Идентификатор варианта
+    private long wareId;
+    private String variant;             //Вариант (ImageVariant)
+    private byte[] image;
+    private String contentType;         //MIME тип картинки
+    private String contentHash;         //SHA-256 исходной картинки, из которой получен вариант
+    private long size;                  //Размер картинки в байтах
+    private LocalDateTime createdAt;
+}
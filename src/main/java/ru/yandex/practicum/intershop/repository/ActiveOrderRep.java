@@ -0,0 +1,16 @@
+package ru.yandex.practicum.intershop.repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Создание активного заказа (корзины) сессии без гонок
+ */
+public interface ActiveOrderRep {
+    /**
+     * Создание активного заказа сессии, если его ещё нет.
+     * При одновременных вызовах создаётся только один заказ - остальные вызовы ничего не делают.
+     * @param sessionId Идентификатор сессии
+     * @return
+     */
+    Mono<Void> claimActiveOrder(String sessionId);
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.configuration.DbPlatform;
+
+/**
+ * Создание активного заказа сессии.
+ * Единственность активного заказа обеспечивает индекс uq_orders_active_session:
+ * в PostgreSQL - частичный уникальный индекс, конфликт пропускается через ON CONFLICT DO NOTHING;
+ * в H2 (тесты) - уникальный индекс по вычисляемому столбцу, нарушение уникальности игнорируется.
+ */
+public class ActiveOrderRepImpl implements ActiveOrderRep {
+    private static final String INSERT = "INSERT INTO orders (stat, session_id) VALUES ('NEW', :sessionId)";
+
+    private final DatabaseClient databaseClient;
+    private final DbPlatform platform;
+
+    public ActiveOrderRepImpl(DatabaseClient databaseClient, DbPlatform platform) {
+        this.databaseClient = databaseClient;
+        this.platform = platform;
+    }
+
+    @Override
+    public Mono<Void> claimActiveOrder(String sessionId) {
+        if (platform == DbPlatform.POSTGRESQL)
+            return databaseClient.sql(INSERT + " ON CONFLICT DO NOTHING")
+                                 .bind("sessionId", sessionId)
+                                 .then();
+
+        return databaseClient.sql(INSERT)
+                             .bind("sessionId", sessionId)
+                             .then()
+                             .onErrorResume(DataIntegrityViolationException.class, e -> Mono.empty());
+    }
+}
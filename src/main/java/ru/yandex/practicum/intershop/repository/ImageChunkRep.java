@@ -0,0 +1,37 @@
+package ru.yandex.practicum.intershop.repository;
+
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+
+/**
+ * Чтение и запись байт изображений по частям (без загрузки картинки в память целиком)
+ */
+public interface ImageChunkRep {
+    /**
+     * Получение части изображения товара или его варианта
+     * @param wareId        Идентификатор товара
+     * @param variant       Вариант (ORIGINAL - исходная картинка)
+     * @param contentHash   Версия картинки (если не пусто - часть другой версии не возвращается)
+     * @param offset        Смещение первого байта (с 0)
+     * @param length        Число байт
+     * @return              Байты части (пусто, если картинки нет или она заменена)
+     */
+    Mono<byte[]> readChunk(long wareId, ImageVariant variant, String contentHash, long offset, int length);
+
+    /**
+     * Дописывание части в конец изображения товара (строка изображения уже создана)
+     * @param wareId    Идентификатор товара
+     * @param chunk     Байты части
+     * @return          Завершение
+     */
+    Mono<Void> appendChunk(long wareId, byte[] chunk);
+
+    /**
+     * Запись метаданных изображения, загруженного по частям
+     * @param wareId        Идентификатор товара
+     * @param contentType   MIME тип картинки
+     * @param contentHash   SHA-256 содержимого
+     * @return              Завершение
+     */
+    Mono<Void> completeUpload(long wareId, String contentType, String contentHash);
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+
+/**
+ * Части картинки: чтение - SUBSTRING, запись - конкатенация (||) бинарного столбца (Postgres и H2)
+ */
+public class ImageChunkRepImpl implements ImageChunkRep {
+    private static final String ORIGINAL = """
+            SELECT SUBSTRING(image FROM :from FOR :length) AS chunk
+              FROM ware_images
+             WHERE ware_id = :wareId
+            """;
+    private static final String VARIANT = """
+            SELECT SUBSTRING(image FROM :from FOR :length) AS chunk
+              FROM ware_image_variants
+             WHERE ware_id = :wareId AND variant = :variant
+            """;
+    private static final String SAME_VERSION = " AND content_hash = :contentHash";
+    //Явное приведение: без него H2 выводит тип параметра как строку и склеивает текст
+    private static final String APPEND = """
+            UPDATE ware_images
+               SET image = image || CAST(:chunk AS BYTEA), size = size + :length
+             WHERE ware_id = :wareId
+            """;
+    private static final String COMPLETE = """
+            UPDATE ware_images
+               SET content_type = :contentType, content_hash = :contentHash
+             WHERE ware_id = :wareId
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    public ImageChunkRepImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<byte[]> readChunk(long wareId, ImageVariant variant, String contentHash, long offset, int length) {
+        String sql = (variant == ImageVariant.ORIGINAL ? ORIGINAL : VARIANT) +
+                     (contentHash == null ? "" : SAME_VERSION);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .bind("from", Math.toIntExact(offset + 1))          //SUBSTRING считает байты с 1
+                .bind("length", length)
+                .bind("wareId", wareId);
+        if (variant != ImageVariant.ORIGINAL)
+            spec = spec.bind("variant", variant.name());
+        if (contentHash != null)
+            spec = spec.bind("contentHash", contentHash);
+
+        return spec.map(row -> row.get("chunk", byte[].class)).one();
+    }
+
+    @Override
+    public Mono<Void> appendChunk(long wareId, byte[] chunk) {
+        return databaseClient.sql(APPEND)
+                .bind("chunk", chunk)
+                .bind("length", (long) chunk.length)
+                .bind("wareId", wareId)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> completeUpload(long wareId, String contentType, String contentHash) {
+        return databaseClient.sql(COMPLETE)
+                .bind("contentType", contentType)
+                .bind("contentHash", contentHash)
+                .bind("wareId", wareId)
+                .then();
+    }
+}
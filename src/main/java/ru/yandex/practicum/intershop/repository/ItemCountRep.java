@@ -0,0 +1,34 @@
+package ru.yandex.practicum.intershop.repository;
+
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+
+/**
+ * Атомарное изменение количества товара в заказе (без чтения-изменения-записи)
+ */
+public interface ItemCountRep {
+    /**
+     * Увеличение количества товара на 1 (элемент создаётся, если его ещё нет) - одним запросом
+     * @param orderId   Идентификатор заказа
+     * @param wareId    Идентификатор товара
+     * @return
+     */
+    Mono<Void> incrementCount(long orderId, long wareId);
+
+    /**
+     * Уменьшение количества товара на 1 (элемент удаляется, если количество было 1)
+     * @param orderId   Идентификатор заказа
+     * @param wareId    Идентификатор товара
+     * @return
+     */
+    Mono<Void> decrementCount(long orderId, long wareId);
+
+    /**
+     * Пакетная запись количеств товаров заказа: ненулевые - вставка/обновление, нулевые - удаление.
+     * Элементы меняются, только если заказ ещё активен (не оформлен).
+     * @param orderId   Идентификатор заказа
+     * @param counts    Количества по идентификаторам товаров
+     * @return
+     */
+    Mono<Void> writeCounts(long orderId, LongIntMap counts);
+}
@@ -0,0 +1,126 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.configuration.DbPlatform;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Изменение количества товара в заказе одним запросом к базе.
+ * Опирается на уникальный индекс uq_items_order_ware (db/migration/V1__baseline.sql):
+ * в PostgreSQL - INSERT ... ON CONFLICT DO UPDATE, в H2 (тесты) - MERGE.
+ * Уменьшение - условный UPDATE, и только если количество было 1 - DELETE.
+ * Пакетная запись корзины - многострочный вариант тех же запросов с абсолютными количествами;
+ * она меняет элементы, только пока заказ активен (stat = 'NEW'), поэтому запоздавшая отложенная запись
+ * не затрёт оформленный заказ. В PostgreSQL проверка берёт блокировку строки заказа (FOR SHARE):
+ * запись, начатая во время оформления, дождётся его фиксации и увидит новый статус.
+ */
+public class ItemCountRepImpl implements ItemCountRep {
+    private static final String PG_INCREMENT = """
+            INSERT INTO items (order_id, ware_id, count) VALUES (:orderId, :wareId, 1)
+            ON CONFLICT (order_id, ware_id) DO UPDATE SET count = items.count + 1
+            """;
+
+    private static final String H2_INCREMENT = """
+            MERGE INTO items t
+            USING (VALUES (CAST(:orderId AS BIGINT), CAST(:wareId AS BIGINT))) s (order_id, ware_id)
+               ON t.order_id = s.order_id AND t.ware_id = s.ware_id
+             WHEN MATCHED THEN UPDATE SET count = t.count + 1
+             WHEN NOT MATCHED THEN INSERT (order_id, ware_id, count) VALUES (s.order_id, s.ware_id, 1)
+            """;
+
+    private static final String DECREMENT =
+            "UPDATE items SET count = count - 1 WHERE order_id = :orderId AND ware_id = :wareId AND count > 1";
+
+    private static final String DELETE_LAST =
+            "DELETE FROM items WHERE order_id = :orderId AND ware_id = :wareId AND count <= 1";
+
+    private static final String PG_ACTIVE =
+            "EXISTS (SELECT 1 FROM orders WHERE id = :orderId AND stat = 'NEW' FOR SHARE)";
+
+    private static final String H2_ACTIVE =
+            "EXISTS (SELECT 1 FROM orders WHERE id = :orderId AND stat = 'NEW')";
+
+    private static final String PG_WRITE = """
+            INSERT INTO items (order_id, ware_id, count)
+            SELECT v.order_id, v.ware_id, v.count FROM (VALUES :rows) v (order_id, ware_id, count)
+             WHERE %s
+            ON CONFLICT (order_id, ware_id) DO UPDATE SET count = EXCLUDED.count
+            """.formatted(PG_ACTIVE);
+
+    private static final String H2_WRITE = """
+            MERGE INTO items t
+            USING (SELECT * FROM (VALUES :rows) v (order_id, ware_id, count) WHERE %s) s
+               ON t.order_id = s.order_id AND t.ware_id = s.ware_id
+             WHEN MATCHED THEN UPDATE SET count = s.count
+             WHEN NOT MATCHED THEN INSERT (order_id, ware_id, count) VALUES (s.order_id, s.ware_id, s.count)
+            """.formatted(H2_ACTIVE);
+
+    private static final String PG_DELETE_WARES =
+            "DELETE FROM items WHERE order_id = :orderId AND ware_id IN (:wareIds) AND " + PG_ACTIVE;
+
+    private static final String H2_DELETE_WARES =
+            "DELETE FROM items WHERE order_id = :orderId AND ware_id IN (:wareIds) AND " + H2_ACTIVE;
+
+    private final DatabaseClient databaseClient;
+    private final DbPlatform platform;
+
+    public ItemCountRepImpl(DatabaseClient databaseClient, DbPlatform platform) {
+        this.databaseClient = databaseClient;
+        this.platform = platform;
+    }
+
+    @Override
+    public Mono<Void> incrementCount(long orderId, long wareId) {
+        return execute(platform == DbPlatform.POSTGRESQL ? PG_INCREMENT : H2_INCREMENT, orderId, wareId)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> decrementCount(long orderId, long wareId) {
+        return execute(DECREMENT, orderId, wareId)
+                .flatMap(updated -> updated > 0 ?
+                        Mono.just(updated) :
+                        execute(DELETE_LAST, orderId, wareId))   //Количество было 1 (или товара нет)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> writeCounts(long orderId, LongIntMap counts) {
+        List<Object[]> rows = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        counts.forEach((wareId, count) -> {
+            if (count > 0)
+                rows.add(new Object[] {orderId, wareId, count});
+            else
+                removed.add(wareId);
+        });
+
+        //Все строки заказа - одним запросом на запись и одним на удаление
+        Mono<Long> write = rows.isEmpty() ? Mono.empty() :
+                databaseClient.sql(platform == DbPlatform.POSTGRESQL ? PG_WRITE : H2_WRITE)
+                              .bind("rows", rows)
+                              .bind("orderId", orderId)
+                              .fetch()
+                              .rowsUpdated();
+        Mono<Long> delete = removed.isEmpty() ? Mono.empty() :
+                databaseClient.sql(platform == DbPlatform.POSTGRESQL ? PG_DELETE_WARES : H2_DELETE_WARES)
+                              .bind("orderId", orderId)
+                              .bind("wareIds", removed)
+                              .fetch()
+                              .rowsUpdated();
+
+        return write.then(delete).then();
+    }
+
+    private Mono<Long> execute(String sql, long orderId, long wareId) {
+        return databaseClient.sql(sql)
+                             .bind("orderId", orderId)
+                             .bind("wareId", wareId)
+                             .fetch()
+                             .rowsUpdated();
+    }
+}
@@ -1,13 +1,18 @@
 package ru.yandex.practicum.intershop.repository;
 
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.yandex.practicum.intershop.model.Item;
+import ru.yandex.practicum.intershop.model.WareCount;
+
+import java.util.Collection;
 
 @Repository
-public interface ItemRep extends R2dbcRepository<Item, Long> {
+public interface ItemRep extends R2dbcRepository<Item, Long>, ItemCountRep {
     Mono<Item> findByOrderIdAndWareId(Long orderId, Long wareId);
 
     /**
@@ -24,4 +29,37 @@ public interface ItemRep extends R2dbcRepository<Item, Long> {
      * @return
      */
     Flux<Item> findAllByOrderIdOrderByIdDesc(Long orderId);
+
+    /**
+     * Получение элементов сразу нескольких заказов (одним запросом)
+     * @param orderIds  Идентификаторы заказов
+     * @return
+     */
+    Flux<Item> findAllByOrderIdInOrderByIdDesc(Collection<Long> orderIds);
+
+    /**
+     * Количества заданных товаров в заказе (только ware_id и count, без загрузки товаров)
+     * @param orderId   Идентификатор заказа
+     * @param wareIds   Идентификаторы товаров
+     * @return
+     */
+    @Query("SELECT ware_id, count FROM items WHERE order_id = :orderId AND ware_id IN (:wareIds)")
+    Flux<WareCount> findCountsByOrderIdAndWareIdIn(Long orderId, Collection<Long> wareIds);
+
+    /**
+     * Фиксация текущих цен и названий товаров в элементах заказа (одним запросом).
+     * Элементы уже оформленного заказа не меняются (повторное или одновременное оформление,
+     * устаревший идентификатор корзины в сессии).
+     * @param orderId   Идентификатор заказа
+     * @return          Количество элементов (0, если заказ уже не активен)
+     */
+    @Modifying
+    @Query("""
+            UPDATE items
+               SET unit_price = (SELECT w.price FROM wares w WHERE w.id = items.ware_id),
+                   title = (SELECT w.title FROM wares w WHERE w.id = items.ware_id)
+             WHERE order_id = :orderId
+               AND EXISTS (SELECT 1 FROM orders o WHERE o.id = :orderId AND o.stat = 'NEW')
+            """)
+    Mono<Long> snapshotLines(long orderId);
 }
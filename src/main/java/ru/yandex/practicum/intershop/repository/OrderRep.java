@@ -1,19 +1,112 @@
 package ru.yandex.practicum.intershop.repository;
 
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import reactor.core.publisher.Flux;
 import ru.yandex.practicum.intershop.model.Order;
 import ru.yandex.practicum.intershop.model.OrderStatus;
+import ru.yandex.practicum.intershop.model.OrderSummary;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface OrderRep extends R2dbcRepository<Order, Long>{
-    Mono<Order> findTopByStatIsOrderByIdDesc(OrderStatus stat);
+public interface OrderRep extends R2dbcRepository<Order, Long>, ActiveOrderRep {
+    Mono<Order> findTopBySessionIdAndStatOrderByIdDesc(String sessionId, OrderStatus stat);
 
-    default  Mono<Order> findActiveOrder() {
-        return findTopByStatIsOrderByIdDesc(OrderStatus.NEW);
+    /**
+     * Активный заказ (корзина) сессии
+     * @param sessionId Идентификатор сессии
+     * @return
+     */
+    default  Mono<Order> findActiveOrder(String sessionId) {
+        return findTopBySessionIdAndStatOrderByIdDesc(sessionId, OrderStatus.NEW);
     }
 
-    Flux<Order> findAllByOrderByIdDesc();
+    /**
+     * Заказ, оформленный с заданным токеном
+     * @param checkoutToken Токен оформления
+     * @return
+     */
+    Mono<Order> findByCheckoutToken(String checkoutToken);
+
+    /**
+     * Оформление заказа: статус, токен и сумма по зафиксированным ценам - одним запросом.
+     * Заказ оформляется, только если он ещё активен.
+     * @param id            Идентификатор заказа
+     * @param checkoutToken Токен оформления
+     * @return              1 - заказ оформлен, 0 - заказ уже не активен
+     */
+    @Modifying
+    @Query("""
+            UPDATE orders
+               SET stat = 'BUY',
+                   checkout_token = :checkoutToken,
+                   item_count = (SELECT COALESCE(SUM(i.count), 0) FROM items i WHERE i.order_id = orders.id),
+                   total_amount = (SELECT COALESCE(SUM(i.count * i.unit_price), 0) FROM items i WHERE i.order_id = orders.id)
+             WHERE id = :id AND stat = 'NEW'
+            """)
+    Mono<Long> checkout(long id, String checkoutToken);
+
+    /**
+     * Пересчёт итогов активного заказа по текущим ценам (после изменения корзины)
+     * @param id    Идентификатор заказа
+     * @return
+     */
+    @Modifying
+    @Query("""
+            UPDATE orders
+               SET item_count = (SELECT COALESCE(SUM(i.count), 0) FROM items i WHERE i.order_id = orders.id),
+                   total_amount = (SELECT COALESCE(SUM(i.count * w.price), 0)
+                                     FROM items i JOIN wares w ON w.id = i.ware_id
+                                    WHERE i.order_id = orders.id)
+             WHERE id = :id AND stat = 'NEW'
+            """)
+    Mono<Long> refreshTotals(long id);
+
+    /**
+     * Заказ посетителя по идентификатору. Заказы без владельца (оформленные до разделения корзин
+     * по посетителям, когда корзина была общей) видны всем, как и раньше.
+     * @param id        Идентификатор заказа
+     * @param sessionId Владелец корзины
+     * @return          Заказ (пусто, если заказа нет или он принадлежит другому посетителю)
+     */
+    @Query("SELECT * FROM orders WHERE id = :id AND (session_id = :sessionId OR session_id IS NULL)")
+    Mono<Order> findVisibleById(Long id, String sessionId);
+
+    /**
+     * Страница заказов посетителя (и общих заказов без владельца), более старых чем курсор
+     * (keyset пагинация по id)
+     * @param sessionId Владелец корзины
+     * @param id        Курсор - идентификатор последнего заказа предыдущей страницы
+     * @param limit     Размер страницы
+     * @return          Заказы по убыванию идентификатора
+     */
+    @Query("""
+            SELECT *
+              FROM orders
+             WHERE (session_id = :sessionId OR session_id IS NULL) AND id < :id
+             ORDER BY id DESC
+             LIMIT :limit
+            """)
+    Flux<Order> findVisibleBefore(String sessionId, Long id, int limit);
+
+    /**
+     * Страница сводок по заказам посетителя и общим заказам без владельца
+     * (хранимые количество и сумма - без выборки элементов и товаров)
+     * @param sessionId Владелец корзины
+     * @param id        Курсор - идентификатор последнего заказа предыдущей страницы
+     * @param limit     Размер страницы
+     * @return          Сводки по убыванию идентификатора
+     */
+    @Query("""
+            SELECT id, stat,
+                   COALESCE(item_count, 0)   AS item_count,
+                   COALESCE(total_amount, 0) AS total_sum
+              FROM orders
+             WHERE (session_id = :sessionId OR session_id IS NULL) AND id < :id
+             ORDER BY id DESC
+             LIMIT :limit
+            """)
+    Flux<OrderSummary> findVisibleSummariesBefore(String sessionId, Long id, int limit);
 }
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.intershop.repository;
+
+import reactor.core.publisher.Flux;
+import ru.yandex.practicum.intershop.model.Ware;
+
+import java.util.List;
+
+/**
+ * Пакетная вставка товаров (массовый импорт каталога)
+ */
+public interface WareBatchRep {
+    /**
+     * Вставка товаров одним пакетным запросом
+     * @param wares     Товары (без идентификаторов)
+     * @return          Присвоенные идентификаторы - в порядке товаров
+     */
+    Flux<Long> insertAll(List<Ware> wares);
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.intershop.repository;
+
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import ru.yandex.practicum.intershop.model.Ware;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Пакетная вставка товаров: один подготовленный запрос с набором привязок (Statement.add),
+ * драйвер отправляет их вместе, без ожидания ответа на каждую строку.
+ * Время создания заполняется значением по умолчанию столбца.
+ */
+public class WareBatchRepImpl implements WareBatchRep {
+    private static final String INSERT =
+            "INSERT INTO wares (title, description, price, image_hash) VALUES ($1, $2, $3, $4)";
+
+    private final DatabaseClient databaseClient;
+
+    public WareBatchRepImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<Long> insertAll(List<Ware> wares) {
+        if (wares.isEmpty())
+            return Flux.empty();
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT).returnGeneratedValues("id");
+            for (int i = 0; i < wares.size(); i++) {
+                if (i > 0)
+                    statement.add();
+                Ware ware = wares.get(i);
+                statement.bind(0, ware.getTitle());
+                bindNullable(statement, 1, ware.getDescription());
+                statement.bind(2, new BigDecimal(Float.toString(ware.getPrice())));
+                bindNullable(statement, 3, ware.getImageHash());
+            }
+            return Flux.from(statement.execute())
+                       .concatMap(result -> result.map((row, meta) -> row.get("id", Long.class)));
+        });
+    }
+
+    static void bindNullable(Statement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index, String.class);
+        else
+            statement.bind(index, value);
+    }
+}
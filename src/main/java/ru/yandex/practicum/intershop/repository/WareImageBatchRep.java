@@ -0,0 +1,17 @@
+package ru.yandex.practicum.intershop.repository;
+
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.WareImage;
+
+import java.util.List;
+
+/**
+ * Пакетная вставка изображений товаров (массовый импорт каталога)
+ */
+public interface WareImageBatchRep {
+    /**
+     * Вставка изображений одним пакетным запросом
+     * @param images    Изображения (с идентификаторами товаров)
+     */
+    Mono<Void> insertAll(List<WareImage> images);
+}
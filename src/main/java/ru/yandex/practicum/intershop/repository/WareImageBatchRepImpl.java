@@ -0,0 +1,46 @@
+package ru.yandex.practicum.intershop.repository;
+
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.WareImage;
+
+import java.util.List;
+
+/**
+ * Пакетная вставка изображений: один подготовленный запрос с набором привязок (Statement.add)
+ */
+public class WareImageBatchRepImpl implements WareImageBatchRep {
+    private static final String INSERT = """
+            INSERT INTO ware_images (ware_id, image, content_type, content_hash, size)
+            VALUES ($1, $2, $3, $4, $5)
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    public WareImageBatchRepImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Void> insertAll(List<WareImage> images) {
+        if (images.isEmpty())
+            return Mono.empty();
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT);
+            for (int i = 0; i < images.size(); i++) {
+                if (i > 0)
+                    statement.add();
+                WareImage image = images.get(i);
+                statement.bind(0, image.getWareId());
+                statement.bind(1, image.getImage());
+                WareBatchRepImpl.bindNullable(statement, 2, image.getContentType());
+                WareBatchRepImpl.bindNullable(statement, 3, image.getContentHash());
+                statement.bind(4, image.getSize());
+            }
+            return Flux.from(statement.execute()).concatMap(result -> result.getRowsUpdated());
+        }).then();
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.WareImage;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
+
+@Repository
+public interface WareImageRep extends R2dbcRepository<WareImage, Long>, WareImageBatchRep, ImageChunkRep {
+    /**
+     * Получение изображения товара
+     * @param wareId    Идентификатор товара
+     * @return          Изображение
+     */
+    Mono<WareImage> findByWareId(Long wareId);
+
+    /**
+     * Получение метаданных изображения товара (без чтения байт картинки)
+     * @param wareId    Идентификатор товара
+     * @return          Метаданные изображения
+     */
+    Mono<WareImageInfo> findInfoByWareId(Long wareId);
+
+    /**
+     * Удаление изображения товара
+     * @param wareId    Идентификатор товара
+     */
+    Mono<Void> deleteByWareId(Long wareId);
+}
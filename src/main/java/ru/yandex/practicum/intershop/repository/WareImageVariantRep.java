@@ -0,0 +1,26 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
+import ru.yandex.practicum.intershop.model.WareImageVariant;
+
+@Repository
+public interface WareImageVariantRep extends R2dbcRepository<WareImageVariant, Long> {
+    /**
+     * Получение варианта изображения товара
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Вариант изображения
+     */
+    Mono<WareImageVariant> findByWareIdAndVariant(Long wareId, String variant);
+
+    /**
+     * Получение метаданных варианта изображения (без чтения байт картинки)
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Метаданные варианта
+     */
+    Mono<WareImageInfo> findInfoByWareIdAndVariant(Long wareId, String variant);
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.SearchPage;
+import ru.yandex.practicum.intershop.model.SortKind;
+
+/**
+ * Выборка страниц каталога с полнотекстовым поиском по названию и описанию
+ */
+public interface WareSearchRep {
+    /**
+     * Страница идентификаторов товаров вместе с общим количеством (одним запросом)
+     * @param search        Строка поиска (пустая - все товары)
+     * @param sortKind      Тип сортировки
+     * @param pageable      Атрибуты страницы
+     * @param exactTotal    Считать общее количество; иначе определяется только наличие следующей страницы
+     * @return              Страница
+     */
+    Mono<SearchPage> searchPage(String search, SortKind sortKind, Pageable pageable, boolean exactTotal);
+
+    /**
+     * Количество найденных товаров
+     * @param search    Строка поиска (пустая - все товары)
+     * @return          Количество товаров
+     */
+    Mono<Long> countSearch(String search);
+}
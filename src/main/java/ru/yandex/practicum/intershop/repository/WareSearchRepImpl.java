@@ -0,0 +1,132 @@
+package ru.yandex.practicum.intershop.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.configuration.DbPlatform;
+import ru.yandex.practicum.intershop.model.SearchPage;
+import ru.yandex.practicum.intershop.model.SortKind;
+
+import java.util.List;
+
+/**
+ * Выборка страниц каталога.
+ * В PostgreSQL поиск использует индексированные tsvector (по словам) и pg_trgm (по подстроке),
+ * в H2 (тесты) - поиск подстроки через LIKE с упрощённой оценкой релевантности.
+ * Общее количество считается в том же запросе оконной функцией COUNT(*) OVER().
+ */
+public class WareSearchRepImpl implements WareSearchRep {
+    //Выражение должно совпадать с выражением индекса idx_wares_fts (db/migration/postgresql/V2__search_and_cart_indexes.sql)
+    private static final String PG_VECTOR =
+            "to_tsvector('russian', coalesce(title, '') || ' ' || coalesce(description, ''))";
+    private static final String PG_QUERY = "plainto_tsquery('russian', :q)";
+
+    private static final String PG_WHERE =
+            " WHERE " + PG_VECTOR + " @@ " + PG_QUERY +
+            " OR title ILIKE :like OR description ILIKE :like";
+    private static final String PG_RANK = "ts_rank(" + PG_VECTOR + ", " + PG_QUERY + ") + similarity(title, :q)";
+
+    private static final String H2_WHERE = " WHERE LOWER(title) LIKE :like OR LOWER(description) LIKE :like";
+    private static final String H2_RANK =
+            "CASE WHEN LOWER(title) LIKE :like THEN 2 ELSE 0 END + " +
+            "CASE WHEN LOWER(description) LIKE :like THEN 1 ELSE 0 END";
+
+    private final DatabaseClient databaseClient;
+    private final DbPlatform platform;
+
+    public WareSearchRepImpl(DatabaseClient databaseClient, DbPlatform platform) {
+        this.databaseClient = databaseClient;
+        this.platform = platform;
+    }
+
+    @Override
+    public Mono<SearchPage> searchPage(String search, SortKind sortKind, Pageable pageable, boolean exactTotal) {
+        boolean hasSearch = search != null && !search.isEmpty();
+        int size = pageable.getPageSize();
+
+        if (!exactTotal) {
+            //Выбирается на одну строку больше - только чтобы узнать, есть ли следующая страница
+            String sql = "SELECT id FROM wares" + where(hasSearch) +
+                         " ORDER BY " + orderBy(sortKind, hasSearch) +
+                         " LIMIT :limit OFFSET :offset";
+
+            return bindSearch(databaseClient.sql(sql), search)
+                    .bind("limit", size + 1)
+                    .bind("offset", pageable.getOffset())
+                    .map(row -> row.get("id", Long.class))
+                    .all()
+                    .collectList()
+                    .map(ids -> {
+                        boolean hasNext = ids.size() > size;
+                        return new SearchPage(hasNext ? ids.subList(0, size) : ids, -1, hasNext);
+                    });
+        }
+
+        String sql = "SELECT id, COUNT(*) OVER() AS total FROM wares" + where(hasSearch) +
+                     " ORDER BY " + orderBy(sortKind, hasSearch) +
+                     " LIMIT :limit OFFSET :offset";
+
+        return bindSearch(databaseClient.sql(sql), search)
+                .bind("limit", size)
+                .bind("offset", pageable.getOffset())
+                .map(row -> new long[] {row.get("id", Long.class), row.get("total", Long.class)})
+                .all()
+                .collectList()
+                .flatMap(rows -> {
+                    if (rows.isEmpty()) {
+                        //За пределами выборки строк нет - общее количество приходится считать отдельно
+                        return pageable.getOffset() == 0 ?
+                                Mono.just(new SearchPage(List.of(), 0, false)) :
+                                countSearch(search).map(total -> new SearchPage(List.of(), total, false));
+                    }
+                    long total = rows.get(0)[1];
+                    return Mono.just(new SearchPage(rows.stream().map(r -> r[0]).toList(),
+                                                    total,
+                                                    pageable.getOffset() + rows.size() < total));
+                });
+    }
+
+    @Override
+    public Mono<Long> countSearch(String search) {
+        boolean hasSearch = search != null && !search.isEmpty();
+        return bindSearch(databaseClient.sql("SELECT COUNT(*) AS cnt FROM wares" + where(hasSearch)), search)
+                .map(row -> row.get("cnt", Long.class))
+                .one();
+    }
+
+    private String where(boolean hasSearch) {
+        if (!hasSearch)
+            return "";
+        return platform == DbPlatform.POSTGRESQL ? PG_WHERE : H2_WHERE;
+    }
+
+    private String orderBy(SortKind sortKind, boolean hasSearch) {
+        return switch (sortKind) {
+            case NO        -> "id";
+            //Побайтно, как в отсортированном индексе в Redis (в H2 строки и так сравниваются по кодам символов)
+            case ALPHA     -> platform == DbPlatform.POSTGRESQL ? "title COLLATE \"C\", id" : "title, id";
+            case PRICE     -> "price, id";
+            case RELEVANCE -> hasSearch ?
+                    "(" + (platform == DbPlatform.POSTGRESQL ? PG_RANK : H2_RANK) + ") DESC, id" :
+                    "id";
+        };
+    }
+
+    private DatabaseClient.GenericExecuteSpec bindSearch(DatabaseClient.GenericExecuteSpec spec, String search) {
+        if (search == null || search.isEmpty())
+            return spec;
+
+        String like = "%" + escapeLike(platform == DbPlatform.POSTGRESQL ? search : search.toLowerCase()) + "%";
+        spec = spec.bind("like", like);
+        return platform == DbPlatform.POSTGRESQL ? spec.bind("q", search) : spec;
+    }
+
+    /**
+     * Экранирование спецсимволов LIKE во введённой пользователем строке
+     */
+    private static String escapeLike(String search) {
+        return search.replace("\\", "\\\\")
+                     .replace("%", "\\%")
+                     .replace("_", "\\_");
+    }
+}
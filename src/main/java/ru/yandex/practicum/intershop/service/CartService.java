@@ -0,0 +1,53 @@
+package ru.yandex.practicum.intershop.service;
+
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.Item;
+import ru.yandex.practicum.intershop.model.ItemAction;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Хранилище содержимого активных корзин (количества товаров по идентификаторам)
+ */
+public interface CartService {
+    /**
+     * Изменение количества товара в корзине
+     * @param orderId   Идентификатор заказа-корзины
+     * @param wareId    Идентификатор товара
+     * @param action    Действие
+     * @return
+     */
+    Mono<Void> changeCount(long orderId, long wareId, ItemAction action);
+
+    /**
+     * Элементы корзины с ненулевым количеством, последние добавленные - первыми
+     * (как элементы заказа по убыванию идентификатора)
+     * @param orderId   Идентификатор заказа-корзины
+     * @return          Список элементов
+     */
+    Mono<List<Item>> getItems(long orderId);
+
+    /**
+     * Количества заданных товаров в корзине (товаров, которых в корзине нет, в результате нет)
+     * @param orderId   Идентификатор заказа-корзины
+     * @param wareIds   Идентификаторы товаров
+     * @return          Количества по идентификаторам товаров
+     */
+    Mono<LongIntMap> getCounts(long orderId, Collection<Long> wareIds);
+
+    /**
+     * Синхронная запись корзины в базу (перед оформлением заказа)
+     * @param orderId   Идентификатор заказа-корзины
+     * @return
+     */
+    Mono<Void> flush(long orderId);
+
+    /**
+     * Освобождение корзины после оформления заказа
+     * @param orderId   Идентификатор заказа
+     * @return
+     */
+    Mono<Void> release(long orderId);
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.intershop.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+import ru.yandex.practicum.intershop.model.WareImage;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
+
+/**
+ * Сервис хранилища изображений товаров
+ */
+public interface ImageService {
+    /**
+     * Получение изображения товара
+     * @param wareId    Идентификатор товара
+     * @return          Байты картинки
+     */
+    Mono<byte[]> getImage(Long wareId);
+
+    /**
+     * Получение метаданных изображения товара (без байт картинки)
+     * @param wareId    Идентификатор товара
+     * @return          Метаданные изображения
+     */
+    Mono<WareImageInfo> getImageInfo(Long wareId);
+
+    /**
+     * Получение варианта изображения товара
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Байты картинки (пусто, если вариант ещё не построен)
+     */
+    Mono<byte[]> getImage(Long wareId, ImageVariant variant);
+
+    /**
+     * Получение метаданных варианта изображения товара
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Метаданные (пусто, если вариант ещё не построен)
+     */
+    Mono<WareImageInfo> getImageInfo(Long wareId, ImageVariant variant);
+
+    /**
+     * Чтение байт изображения (или варианта) частями фиксированного размера: в памяти одновременно
+     * только текущая часть. Если за время чтения картинку заменили, поток завершается ошибкой.
+     * @param info      Метаданные изображения (товар и версия)
+     * @param variant   Вариант, к которому относятся метаданные
+     * @param offset    Смещение первого байта
+     * @param length    Число байт
+     * @return          Части картинки
+     */
+    Flux<DataBuffer> readImage(WareImageInfo info, ImageVariant variant, long offset, long length);
+
+    /**
+     * Подготовка изображения к сохранению: расчёт хэша, размера и типа содержимого
+     * @param image         Байты картинки
+     * @param contentType   Заявленный MIME тип (может быть пустым)
+     * @return              Изображение без привязки к товару (null для пустой картинки)
+     */
+    WareImage prepare(byte[] image, String contentType);
+
+    /**
+     * Потоковая запись изображения товара: части дописываются в хранилище по мере поступления
+     * (накопленные до WRITE_CHUNK байт), хэш и размер считаются по частям, полученные части
+     * сразу освобождаются. Превышение допустимого размера прерывает загрузку ошибкой
+     * DataBufferLimitException. Выполняется в транзакции сохранения товара.
+     * @param wareId        Идентификатор товара (изображения у него ещё нет)
+     * @param content       Содержимое картинки
+     * @param contentType   Заявленный MIME тип (может быть пустым)
+     * @return              Метаданные записанного изображения (пусто для пустой картинки)
+     */
+    Mono<WareImageInfo> write(Long wareId, Flux<DataBuffer> content, String contentType);
+
+    /**
+     * Сохранение подготовленного изображения товара
+     * @param wareId    Идентификатор товара
+     * @param image     Изображение
+     */
+    Mono<Void> save(Long wareId, WareImage image);
+
+    /**
+     * Запуск построения уменьшенных вариантов изображения в фоне (картинка читается из хранилища)
+     * @param wareId    Идентификатор товара
+     */
+    void scheduleVariants(Long wareId);
+
+    /**
+     * Построение и сохранение уменьшенных вариантов изображения
+     * @param wareId    Идентификатор товара
+     * @param image     Исходное изображение
+     */
+    Mono<Void> deriveVariants(Long wareId, WareImage image);
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.intershop.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
+import ru.yandex.practicum.intershop.model.CatalogFormat;
+
+/**
+ * Сервис массового импорта каталога
+ */
+public interface ImportService {
+    /**
+     * Запуск импорта: содержимое сохраняется во временный файл, затем разбирается и пишется пачками в фоне
+     * @param format    Формат каталога (для архива - не используется, определяется по имени файла каталога)
+     * @param archive   Содержимое - zip архив с каталогом (catalog.csv или catalog.ndjson) и картинками
+     * @param content   Содержимое (каталог или архив)
+     * @return          Начальное состояние задачи импорта
+     */
+    Mono<ImportProgressDTO> startImport(CatalogFormat format, boolean archive, Flux<DataBuffer> content);
+
+    /**
+     * Ход импорта
+     * @param id    Идентификатор задачи импорта
+     * @return      Состояние задачи (пусто, если задачи нет)
+     */
+    Mono<ImportProgressDTO> getProgress(String id);
+}
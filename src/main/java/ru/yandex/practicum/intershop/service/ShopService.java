@@ -1,14 +1,18 @@
 package ru.yandex.practicum.intershop.service;
 
+import org.springframework.core.io.buffer.DataBuffer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.yandex.practicum.intershop.dto.InWareDTO;
 import ru.yandex.practicum.intershop.dto.ItemDTO;
 import ru.yandex.practicum.intershop.dto.OrderDTO;
+import ru.yandex.practicum.intershop.dto.OrderPageDTO;
+import ru.yandex.practicum.intershop.model.ImageVariant;
 import ru.yandex.practicum.intershop.model.ItemAction;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import ru.yandex.practicum.intershop.model.SortKind;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
 
 /**
  * Класс сервиса для работы с магазином
@@ -35,15 +39,21 @@ public interface ShopService {
     Mono<ItemDTO> getItem(Long id);
 
     /**
-     * Совершение покупки по активной корзине
+     * Оформление заказа по активной корзине
+     * @param checkoutToken Токен оформления: повторный вызов с тем же токеном вернёт уже оформленный заказ
+     *                      (null - без защиты от повторной отправки)
+     * @return  Идентификатор оформленного заказа (пусто, если активной корзины нет)
      */
-    Mono<Void> buy();
+    Mono<Long> buy(String checkoutToken);
 
     /**
-     * Получение всех заказов
-     * @return  Список заказов
+     * Получение страницы истории заказов текущего посетителя (курсорная пагинация по идентификатору)
+     * @param beforeId  Курсор - заказы с идентификатором меньше заданного (null - с последнего)
+     * @param size      Размер страницы
+     * @param summary   Режим сводки: только количество товаров и сумма, без списка элементов
+     * @return  Страница заказов
      */
-    Flux<OrderDTO> getAllOrders();
+    Mono<OrderPageDTO> getOrders(Long beforeId, int size, boolean summary);
 
     /**
      * Получение картинки товара
@@ -53,12 +63,56 @@ public interface ShopService {
      */
     Mono<byte[]> getImage(Long id);
 
+    /**
+     * Получение метаданных картинки товара (тип, хэш, размер, время загрузки)
+     *
+     * @param id  Идентификатор товара
+     * @return  Метаданные картинки
+     */
+    Mono<WareImageInfo> getImageInfo(Long id);
+
+    /**
+     * Получение уменьшенного варианта картинки товара
+     *
+     * @param id        Идентификатор товара
+     * @param variant   Вариант
+     * @return  Картинка (пусто, если вариант ещё не построен)
+     */
+    Mono<byte[]> getImage(Long id, ImageVariant variant);
+
+    /**
+     * Получение метаданных варианта картинки товара
+     *
+     * @param id        Идентификатор товара
+     * @param variant   Вариант
+     * @return  Метаданные картинки (пусто, если вариант ещё не построен)
+     */
+    Mono<WareImageInfo> getImageInfo(Long id, ImageVariant variant);
+
+    /**
+     * Чтение байт картинки (или её варианта) по частям, без загрузки картинки в память целиком
+     *
+     * @param info      Метаданные картинки (товар и версия)
+     * @param variant   Вариант, к которому относятся метаданные
+     * @param offset    Смещение первого байта
+     * @param length    Число байт
+     * @return  Части картинки
+     */
+    Flux<DataBuffer> readImage(WareImageInfo info, ImageVariant variant, long offset, long length);
+
     /**
      * Добавление товара в базу
      * @param ware Товар
      */
     Mono<Void> addWare(InWareDTO ware);
 
+    /**
+     * Добавление товара в базу с потоковой загрузкой картинки
+     * @param ware  Товар (без байт картинки)
+     * @param image Содержимое картинки (части загрузки)
+     */
+    Mono<Void> addWare(InWareDTO ware, Flux<DataBuffer> image);
+
     /**
      * Получение товаров с фильтрацией и пагинацией
      *
@@ -70,9 +124,9 @@ public interface ShopService {
     Mono<Page<ItemDTO>> findAllItemsPaginated(String search, SortKind sortKind, Pageable pageable);
 
     /**
-     * Получение заданного заказа
+     * Получение заданного заказа текущего посетителя
      * @param id Идентификатор заказа
-     * @return Заказ
+     * @return Заказ (пусто, если заказ принадлежит другому посетителю)
      */
     Mono<OrderDTO> getOrder(Long id);
 }
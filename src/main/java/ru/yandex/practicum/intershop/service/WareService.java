@@ -1,17 +1,51 @@
 package ru.yandex.practicum.intershop.service;
 
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.yandex.practicum.intershop.model.SortKind;
 import ru.yandex.practicum.intershop.model.Ware;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface WareService {
     Mono<Ware> findById(Long id);
 
-    Mono<Long> wareCount(String search);
+    /**
+     * Пакетное получение товаров (один MGET в кэш и один запрос в базу на промахи)
+     * @param ids   Идентификаторы товаров
+     * @return      Найденные товары по идентификаторам
+     */
+    Mono<Map<Long, Ware>> findAllByIds(Collection<Long> ids);
+
+    Mono<Ware> save(Ware ware);
+
+    /**
+     * Пакетная вставка новых товаров (один пакетный запрос).
+     * Кэш страниц поиска не сбрасывается - вызывающая сторона делает это один раз на пачку после фиксации.
+     * @param wares Новые товары
+     * @return      Сохранённые товары (с присвоенными идентификаторами)
+     */
+    Mono<List<Ware>> insertAll(List<Ware> wares);
+
+    /**
+     * Учёт вставленных товаров (после фиксации транзакции): добавление в отсортированные индексы
+     * каталога и сброс кэша страниц поиска
+     * @param wares Сохранённые товары (с идентификаторами)
+     */
+    Mono<Void> onInserted(List<Ware> wares);
 
-    Mono<Void> save(Ware ware);
+    /**
+     * Страница товаров каталога вместе с общим количеством (один запрос в базу)
+     * @param exactTotal    Считать общее количество; иначе - только признак следующей страницы
+     */
+    Mono<Page<Ware>> searchPage(String search, SortKind sortKind, Pageable pageable, boolean exactTotal);
 
-    Flux<Ware> searchWares(String search, SortKind sortKind, Pageable pageable);
+    /**
+     * Сброс кэша страниц поиска (на всех экземплярах приложения) и отсортированных индексов каталога -
+     * после изменений каталога в обход сервиса
+     */
+    Mono<Void> invalidateCache();
 }
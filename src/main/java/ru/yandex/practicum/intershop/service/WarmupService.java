@@ -0,0 +1,26 @@
+package ru.yandex.practicum.intershop.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Прогрев кэша каталога: первые страницы каталога и популярные поисковые запросы
+ */
+public interface WarmupService {
+    /**
+     * Учёт поискового запроса пользователя (для прогрева самых частых запросов)
+     * @param search    Строка поиска
+     * @return          Завершение учёта (ошибки Redis не пробрасываются)
+     */
+    Mono<Void> recordSearch(String search);
+
+    /**
+     * Однократный прогрев кэша (последовательно, с паузами между запросами в базу)
+     * @return  Завершение прогрева
+     */
+    Mono<Void> warmUp();
+
+    /**
+     * Завершён ли первый прогрев после запуска приложения
+     */
+    boolean isWarm();
+}
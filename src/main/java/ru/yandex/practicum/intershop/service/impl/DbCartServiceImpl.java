@@ -0,0 +1,61 @@
+package ru.yandex.practicum.intershop.service.impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.model.Item;
+import ru.yandex.practicum.intershop.model.ItemAction;
+import ru.yandex.practicum.intershop.repository.ItemRep;
+import ru.yandex.practicum.intershop.repository.OrderRep;
+import ru.yandex.practicum.intershop.service.CartService;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Корзина непосредственно в базе данных: каждое изменение - атомарный запрос к items и пересчёт итогов заказа
+ */
+@Service
+@ConditionalOnProperty(name = "intershop.cart.store", havingValue = "db")
+public class DbCartServiceImpl implements CartService {
+    private final ItemRep itemRep;
+    private final OrderRep orderRep;
+
+    public DbCartServiceImpl(ItemRep itemRep, OrderRep orderRep) {
+        this.itemRep = itemRep;
+        this.orderRep = orderRep;
+    }
+
+    @Override
+    public Mono<Void> changeCount(long orderId, long wareId, ItemAction action) {
+        Mono<Void> change = switch (action) {
+            case DELETE -> itemRep.deleteByOrderIdAndWareId(orderId, wareId);
+            case PLUS -> itemRep.incrementCount(orderId, wareId);
+            case MINUS -> itemRep.decrementCount(orderId, wareId);
+        };
+        return change.then(orderRep.refreshTotals(orderId)).then();
+    }
+
+    @Override
+    public Mono<List<Item>> getItems(long orderId) {
+        return itemRep.findAllByOrderIdOrderByIdDesc(orderId).collectList();
+    }
+
+    @Override
+    public Mono<LongIntMap> getCounts(long orderId, Collection<Long> wareIds) {
+        return itemRep.findCountsByOrderIdAndWareIdIn(orderId, wareIds)
+                      .collect(() -> new LongIntMap(wareIds.size()),
+                               (counts, wc) -> counts.put(wc.wareId(), wc.count()));
+    }
+
+    @Override
+    public Mono<Void> flush(long orderId) {
+        return Mono.empty();            //Всё уже в базе
+    }
+
+    @Override
+    public Mono<Void> release(long orderId) {
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,460 @@
+package ru.yandex.practicum.intershop.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+import ru.yandex.practicum.intershop.model.WareImage;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
+import ru.yandex.practicum.intershop.model.WareImageVariant;
+import ru.yandex.practicum.intershop.repository.WareImageRep;
+import ru.yandex.practicum.intershop.repository.WareImageVariantRep;
+import ru.yandex.practicum.intershop.service.ImageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Сервис для работы с изображениями товаров.
+ * Картинки хранятся в отдельной таблице и не кэшируются в Redis вместе с товаром.
+ * Уменьшенные варианты (см. ImageVariant) строятся в фоне на ограниченном пуле потоков
+ * и хранятся рядом с исходной картинкой; пока варианта нет, отдаётся исходная.
+ */
+@Slf4j
+@Service
+public class ImageServiceImpl implements ImageService {
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final long MAX_PIXELS = 50_000_000L;    //Больше - не разбирать (защита от "бомб" распаковки)
+    private static final int CHUNK_SIZE = 64 * 1024;        //Байт картинки в одном запросе при отдаче
+    private static final int WRITE_CHUNK = 1024 * 1024;     //Байт картинки в одном запросе при загрузке
+    private static final int HEAD_SIZE = 64;                //Начало картинки для определения типа по сигнатуре
+
+    private final WareImageRep imageRep;
+    private final WareImageVariantRep variantRep;
+    private final long maxSize;                 //Максимальный размер картинки
+    private final Scheduler variantScheduler;   //Ограниченный пул построения вариантов
+
+    public ImageServiceImpl(WareImageRep imageRep,
+                            WareImageVariantRep variantRep,
+                            @Value("${intershop.image.max-size:10MB}") DataSize maxSize,
+                            @Value("${intershop.image.variant-threads:2}") int variantThreads,
+                            @Value("${intershop.image.variant-queue:100}") int variantQueue) {
+        this.imageRep = imageRep;
+        this.variantRep = variantRep;
+        this.maxSize = maxSize.toBytes();
+        this.variantScheduler = Schedulers.newBoundedElastic(variantThreads, variantQueue, "image-variants");
+    }
+
+    @PreDestroy
+    public void stopVariants() {
+        variantScheduler.dispose();
+    }
+
+    /**
+     * Получение изображения товара
+     *
+     * @param wareId    Идентификатор товара
+     * @return          Байты картинки
+     */
+    @Override
+    public Mono<byte[]> getImage(Long wareId) {
+        return imageRep.findByWareId(wareId).map(WareImage::getImage);
+    }
+
+    /**
+     * Получение метаданных изображения товара
+     *
+     * @param wareId    Идентификатор товара
+     * @return          Метаданные изображения
+     */
+    @Override
+    public Mono<WareImageInfo> getImageInfo(Long wareId) {
+        return imageRep.findInfoByWareId(wareId);
+    }
+
+    /**
+     * Получение варианта изображения товара
+     *
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Байты картинки (пусто, если вариант ещё не построен)
+     */
+    @Override
+    public Mono<byte[]> getImage(Long wareId, ImageVariant variant) {
+        if (variant == ImageVariant.ORIGINAL)
+            return getImage(wareId);
+        return variantRep.findByWareIdAndVariant(wareId, variant.name()).map(WareImageVariant::getImage);
+    }
+
+    /**
+     * Получение метаданных варианта изображения товара
+     *
+     * @param wareId    Идентификатор товара
+     * @param variant   Вариант
+     * @return          Метаданные (пусто, если вариант ещё не построен)
+     */
+    @Override
+    public Mono<WareImageInfo> getImageInfo(Long wareId, ImageVariant variant) {
+        if (variant == ImageVariant.ORIGINAL)
+            return getImageInfo(wareId);
+        return variantRep.findInfoByWareIdAndVariant(wareId, variant.name());
+    }
+
+    /**
+     * Чтение байт изображения частями по CHUNK_SIZE: каждая часть - отдельный запрос SUBSTRING,
+     * следующая запрашивается только после отдачи предыдущей (concatMap)
+     *
+     * @param info      Метаданные изображения
+     * @param variant   Вариант
+     * @param offset    Смещение первого байта
+     * @param length    Число байт
+     * @return          Части картинки
+     */
+    @Override
+    public Flux<DataBuffer> readImage(WareImageInfo info, ImageVariant variant, long offset, long length) {
+        int chunks = Math.toIntExact((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        return Flux.range(0, chunks)
+                   .concatMap(i -> {
+                       long position = offset + (long) i * CHUNK_SIZE;
+                       return imageRep.readChunk(info.wareId(), variant, info.contentHash(), position,
+                                                 (int) Math.min(CHUNK_SIZE, offset + length - position))
+                                      .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                                              "Image of ware " + info.wareId() + " was replaced while reading")));
+                   })
+                   .map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    /**
+     * Подготовка изображения к сохранению
+     *
+     * @param image         Байты картинки
+     * @param contentType   Заявленный MIME тип (может быть пустым)
+     * @return              Изображение без привязки к товару (null для пустой картинки)
+     */
+    @Override
+    public WareImage prepare(byte[] image, String contentType) {
+        if (image == null || image.length == 0)
+            return null;
+
+        WareImage ret = new WareImage();
+        ret.setImage(image);
+        ret.setSize(image.length);
+        ret.setContentHash(sha256(image));
+        ret.setContentType(resolveContentType(image, contentType));
+
+        return ret;
+    }
+
+    /**
+     * Потоковая запись изображения: пустая строка изображения создаётся сразу, затем части,
+     * накопленные до WRITE_CHUNK байт, дописываются к ней (image = image || часть).
+     * Крупные порции - чтобы не переписывать растущее значение столбца на каждую мелкую часть.
+     *
+     * @param wareId        Идентификатор товара
+     * @param content       Содержимое картинки
+     * @param contentType   Заявленный MIME тип (может быть пустым)
+     * @return              Метаданные записанного изображения (пусто для пустой картинки)
+     */
+    @Override
+    public Mono<WareImageInfo> write(Long wareId, Flux<DataBuffer> content, String contentType) {
+        return Mono.defer(() -> {
+            Upload upload = new Upload(maxSize);
+            WareImage empty = new WareImage();
+            empty.setWareId(wareId);
+            empty.setImage(new byte[0]);
+
+            return imageRep.save(empty)
+                    .thenMany(content.concatMap(buffer -> {
+                        byte[] chunk = upload.append(buffer);
+                        return chunk == null ? Mono.<Void>empty() : imageRep.appendChunk(wareId, chunk);
+                    }))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)    //Части после ошибки или отмены
+                    .then(Mono.defer(() -> upload.hasPending() ?
+                            imageRep.appendChunk(wareId, upload.takePending()) :
+                            Mono.empty()))
+                    .then(Mono.defer(() -> {
+                        if (upload.size() == 0)                                 //Пустая картинка - без строки
+                            return imageRep.deleteByWareId(wareId).then(Mono.<WareImageInfo>empty());
+
+                        WareImageInfo info = upload.toInfo(wareId, contentType);
+                        return imageRep.completeUpload(wareId, info.contentType(), info.contentHash())
+                                       .thenReturn(info);
+                    }));
+        });
+    }
+
+    /**
+     * Сохранение подготовленного изображения товара
+     *
+     * @param wareId    Идентификатор товара
+     * @param image     Изображение
+     */
+    @Override
+    public Mono<Void> save(Long wareId, WareImage image) {
+        if (image == null)
+            return Mono.empty();
+
+        image.setWareId(wareId);
+        return imageRep.save(image).then();
+    }
+
+    /**
+     * Построение уменьшенных вариантов в фоне (запрос, сохранивший картинку, не ждёт).
+     * Картинка читается из хранилища уже после фиксации товара.
+     * Если очередь пула переполнена, варианты не строятся - отдаётся исходная картинка.
+     *
+     * @param wareId    Идентификатор товара
+     */
+    @Override
+    public void scheduleVariants(Long wareId) {
+        imageRep.findByWareId(wareId)
+                .flatMap(image -> deriveVariants(wareId, image))
+                .subscribe(null, e -> log.warn("Image variants of ware {} were not built: {}", wareId, e.getMessage()));
+    }
+
+    /**
+     * Построение и сохранение уменьшенных вариантов изображения.
+     * Разбор и масштабирование выполняются на пуле image-variants, а не на потоках event loop.
+     *
+     * @param wareId    Идентификатор товара
+     * @param image     Исходное изображение
+     */
+    @Override
+    public Mono<Void> deriveVariants(Long wareId, WareImage image) {
+        return Mono.fromCallable(() -> render(image))
+                   .subscribeOn(variantScheduler)
+                   .flatMapIterable(variants -> variants)
+                   .concatMap(variant -> {
+                       variant.setWareId(wareId);
+                       return variantRep.save(variant);
+                   })
+                   .then();
+    }
+
+    /**
+     * Масштабирование исходной картинки во все варианты, которые меньше неё.
+     * Форматы - только доступные ImageIO без расширений: JPEG, либо PNG для картинок с прозрачностью.
+     * Нераспознанная картинка вариантов не получает.
+     */
+    private static List<WareImageVariant> render(WareImage image) throws IOException {
+        List<WareImageVariant> ret = new ArrayList<>();
+        BufferedImage source = decode(image.getImage(), ImageVariant.MEDIUM.getMaxSide());
+        if (source == null)
+            return ret;
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        String format = alpha ? "png" : "jpeg";
+        for (ImageVariant variant : ImageVariant.values()) {
+            int maxSide = variant.getMaxSide();
+            if (variant == ImageVariant.ORIGINAL || Math.max(source.getWidth(), source.getHeight()) <= maxSide)
+                continue;
+
+            byte[] bytes = encode(scale(source, maxSide, alpha), format);
+            if (bytes.length >= image.getImage().length)        //Не меньше исходной - смысла нет
+                continue;
+
+            WareImageVariant derived = new WareImageVariant();
+            derived.setVariant(variant.name());
+            derived.setImage(bytes);
+            derived.setSize(bytes.length);
+            derived.setContentType("image/" + format);
+            derived.setContentHash(image.getContentHash());
+            ret.add(derived);
+        }
+        return ret;
+    }
+
+    /**
+     * Разбор картинки. Большие картинки разбираются с прореживанием (не менее двух точек
+     * на точку наибольшего варианта) - без распаковки всех пикселей в память.
+     */
+    private static BufferedImage decode(byte[] image, int largestSide) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                return null;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS)
+                    return null;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (2 * largestSide));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Уменьшение с сохранением пропорций: последовательно вдвое, затем до нужного размера
+     * (билинейная интерполяция за один большой шаг даёт заметные искажения)
+     */
+    private static BufferedImage scale(BufferedImage source, int maxSide, boolean alpha) {
+        double ratio = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height,
+                                                   alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() > targetWidth || current.getHeight() > targetHeight);
+
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Определение типа содержимого: заявленный клиентом тип, либо по сигнатуре файла
+     */
+    private static String resolveContentType(byte[] image, String contentType) {
+        if (contentType != null && contentType.startsWith("image/"))
+            return contentType;
+
+        try {
+            String guessed = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(image));
+            return guessed != null ? guessed : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        } catch (IOException e) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Состояние потоковой загрузки: хэш и размер считаются по частям, байты копируются в порцию
+     * для записи (не больше WRITE_CHUNK), а сама часть (в т.ч. из пула или вне кучи) сразу освобождается.
+     * Для определения типа содержимого сохраняется только начало картинки.
+     */
+    private static class Upload {
+        private final long maxSize;
+        private final MessageDigest digest = sha256();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        private long size;
+
+        Upload(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Учёт части загрузки
+         * @return  Порция для записи, если накоплено WRITE_CHUNK байт (иначе null)
+         */
+        byte[] append(DataBuffer buffer) {
+            try {
+                int length = buffer.readableByteCount();
+                if (size + length > maxSize)
+                    throw new DataBufferLimitException("Image exceeds the limit of " + maxSize + " bytes");
+
+                byte[] chunk = new byte[length];
+                buffer.read(chunk);
+                digest.update(chunk);
+                if (head.size() < HEAD_SIZE)
+                    head.write(chunk, 0, Math.min(length, HEAD_SIZE - head.size()));
+                pending.write(chunk, 0, length);
+                size += length;
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+            return pending.size() >= WRITE_CHUNK ? takePending() : null;
+        }
+
+        boolean hasPending() {
+            return pending.size() > 0;
+        }
+
+        byte[] takePending() {
+            byte[] ret = pending.toByteArray();
+            pending.reset();
+            return ret;
+        }
+
+        long size() {
+            return size;
+        }
+
+        WareImageInfo toInfo(long wareId, String contentType) {
+            return new WareImageInfo(wareId,
+                                     resolveContentType(head.toByteArray(), contentType),
+                                     HexFormat.of().formatHex(digest.digest()),
+                                     size,
+                                     null);
+        }
+    }
+}
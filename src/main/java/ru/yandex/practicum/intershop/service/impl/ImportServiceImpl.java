@@ -0,0 +1,329 @@
+package ru.yandex.practicum.intershop.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
+import ru.yandex.practicum.intershop.mapper.ImportMapper;
+import ru.yandex.practicum.intershop.model.*;
+import ru.yandex.practicum.intershop.repository.WareImageRep;
+import ru.yandex.practicum.intershop.service.ImageService;
+import ru.yandex.practicum.intershop.service.ImportService;
+import ru.yandex.practicum.intershop.service.WareService;
+import ru.yandex.practicum.intershop.util.CsvLine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Массовый импорт каталога.
+ * Загрузка сохраняется во временный файл (потоком, с ограничением размера), после чего каталог читается
+ * построчно и пишется пачками по intershop.import.batch-size: товары и картинки пачки - пакетными запросами
+ * в одной транзакции, кэш страниц поиска сбрасывается один раз на пачку. Следующая пачка читается только
+ * после записи предыдущей, поэтому в памяти не больше одной пачки (и буфера строк, прочитанных заранее).
+ */
+@Slf4j
+@Service
+public class ImportServiceImpl implements ImportService {
+    private static final List<String> CSV_COLUMNS = List.of("title", "description", "price", "image");
+
+    private final WareService wareServ;
+    private final WareImageRep imageRep;
+    private final ImageService imageServ;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long maxSize;                 //Максимальный размер загрузки
+    private final long maxImageSize;            //Максимальный размер картинки
+    private final int variantThreads;           //Сколько вариантов картинок строится одновременно
+
+    //Задачи импорта (в т.ч. завершённые - для просмотра итогов)
+    private final Cache<String, ImportJob> jobs = Caffeine.newBuilder()
+                                                          .maximumSize(1000)
+                                                          .expireAfterWrite(Duration.ofDays(1))
+                                                          .build();
+
+    public ImportServiceImpl(WareService wareServ,
+                             WareImageRep imageRep,
+                             ImageService imageServ,
+                             TransactionalOperator transactionalOperator,
+                             ObjectMapper objectMapper,
+                             @Value("${intershop.import.batch-size:500}") int batchSize,
+                             @Value("${intershop.import.max-size:2GB}") DataSize maxSize,
+                             @Value("${intershop.image.max-size:10MB}") DataSize maxImageSize,
+                             @Value("${intershop.image.variant-threads:2}") int variantThreads) {
+        this.wareServ = wareServ;
+        this.imageRep = imageRep;
+        this.imageServ = imageServ;
+        this.transactionalOperator = transactionalOperator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxSize = maxSize.toBytes();
+        this.maxImageSize = maxImageSize.toBytes();
+        this.variantThreads = variantThreads;
+    }
+
+    /**
+     * Запуск импорта
+     *
+     * @param format    Формат каталога (для архива определяется по имени файла каталога)
+     * @param archive   Содержимое - zip архив с каталогом и картинками
+     * @param content   Содержимое
+     * @return          Начальное состояние задачи импорта
+     */
+    @Override
+    public Mono<ImportProgressDTO> startImport(CatalogFormat format, boolean archive, Flux<DataBuffer> content) {
+        return Mono.fromCallable(() -> Files.createTempFile("intershop-import-", archive ? ".zip" : ".txt"))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .flatMap(file -> DataBufferUtils.write(limited(content), file)
+                                                   .then(Mono.just(file))
+                                                   .onErrorResume(e -> delete(file).then(Mono.error(e))))
+                   .map(file -> {
+                       ImportJob job = new ImportJob(UUID.randomUUID().toString());
+                       jobs.put(job.getId(), job);
+                       run(job, file, format, archive);
+                       return ImportMapper.toProgressDTO(job);
+                   });
+    }
+
+    @Override
+    public Mono<ImportProgressDTO> getProgress(String id) {
+        return Mono.justOrEmpty(jobs.getIfPresent(id)).map(ImportMapper::toProgressDTO);
+    }
+
+    /**
+     * Ограничение размера загрузки - проверяется по мере поступления частей
+     */
+    private Flux<DataBuffer> limited(Flux<DataBuffer> content) {
+        AtomicLong total = new AtomicLong();
+        return content.doOnNext(buffer -> {
+            if (total.addAndGet(buffer.readableByteCount()) > maxSize) {
+                DataBufferUtils.release(buffer);
+                throw new DataBufferLimitException("Import exceeds the limit of " + maxSize + " bytes");
+            }
+        });
+    }
+
+    /**
+     * Фоновая обработка сохранённой загрузки.
+     * Чтение файла и картинок из архива блокирующее, поэтому выполняется на boundedElastic: subscribeOn -
+     * первые строки, publishOn - следующие (запрос следующих строк приходит после записи пачки из потока
+     * драйвера базы, и без publishOn чтение продолжилось бы на нём).
+     */
+    private void run(ImportJob job, Path file, CatalogFormat format, boolean archive) {
+        Flux.using(() -> new CatalogSource(file, format, archive),
+                   source -> Flux.fromStream(source.reader.lines())
+                                 .publishOn(Schedulers.boundedElastic())
+                                 .index((index, line) -> prepare(job, source, source.firstLine + index, line))
+                                 .flatMapIterable(prepared -> prepared)
+                                 .buffer(batchSize)
+                                 .concatMap(batch -> saveBatch(job, batch)),
+                   CatalogSource::close)
+            .subscribeOn(Schedulers.boundedElastic())
+            .doFinally(signal -> delete(file).subscribe())
+            .subscribe(null,
+                       e -> {
+                           log.warn("Import {} failed: {}", job.getId(), e.getMessage());
+                           job.finish(ImportStatus.FAILED, e.getMessage());
+                       },
+                       () -> {
+                           log.info("Import {} finished: {} imported, {} rejected.",
+                                    job.getId(), job.getImported().get(), job.getFailed().get());
+                           job.finish(ImportStatus.DONE, null);
+                       });
+    }
+
+    /**
+     * Разбор строки каталога и чтение её картинки из архива.
+     * Ошибочная строка отклоняется (учитывается в ходе импорта), остальные продолжают импортироваться.
+     */
+    private List<Prepared> prepare(ImportJob job, CatalogSource source, long lineNo, String line) {
+        if (line.isBlank())
+            return List.of();
+        try {
+            job.getRows().incrementAndGet();
+            CatalogRow row = source.parse(line);
+
+            Ware ware = toWare(row);
+            WareImage image = null;
+            if (row.image() != null && !row.image().isBlank()) {
+                image = imageServ.prepare(source.image(row.image()), null);
+                ware.setImageHash(image != null ? image.getContentHash() : null);
+            }
+            return List.of(new Prepared(ware, image));
+        } catch (Exception e) {
+            job.rejected(lineNo, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static Ware toWare(CatalogRow row) {
+        if (row.title() == null || row.title().isBlank() || row.title().length() > 255)
+            throw new IllegalArgumentException("title is empty or longer than 255");
+        if (row.description() != null && row.description().length() > 1000)
+            throw new IllegalArgumentException("description is longer than 1000");
+        if (row.price() == null || row.price() < 0)
+            throw new IllegalArgumentException("price is empty or negative");
+
+        Ware ware = new Ware();
+        ware.setTitle(row.title());
+        ware.setDescription(row.description());
+        ware.setPrice(row.price());
+        return ware;
+    }
+
+    /**
+     * Запись пачки: товары и картинки - в одной транзакции, после фиксации - добавление в индексы каталога,
+     * один сброс кэша и построение уменьшенных вариантов картинок (не больше variantThreads одновременно)
+     */
+    private Mono<Void> saveBatch(ImportJob job, List<Prepared> batch) {
+        return wareServ.insertAll(batch.stream().map(Prepared::ware).toList())
+                       .flatMap(saved -> {
+                           List<WareImage> images = new ArrayList<>();
+                           for (Prepared prepared : batch)
+                               if (prepared.image() != null) {
+                                   prepared.image().setWareId(prepared.ware().getId());
+                                   images.add(prepared.image());
+                               }
+                           return imageRep.insertAll(images).thenReturn(images);
+                       })
+                       .as(transactionalOperator::transactional)
+                       .flatMap(images -> wareServ.onInserted(batch.stream().map(Prepared::ware).toList())
+                                                  .then(Flux.fromIterable(images)
+                                                            .flatMap(image -> imageServ.deriveVariants(image.getWareId(), image)
+                                                                                       .onErrorResume(e -> {
+                                                                                           log.warn("Image variants of ware {} were not built: {}",
+                                                                                                    image.getWareId(), e.getMessage());
+                                                                                           return Mono.empty();
+                                                                                       }),
+                                                                     variantThreads)
+                                                            .then()))
+                       .doOnSuccess(v -> {
+                           job.getImported().addAndGet(batch.size());
+                           job.getBatches().incrementAndGet();
+                       });
+    }
+
+    private static Mono<Void> delete(Path file) {
+        return Mono.fromCallable(() -> Files.deleteIfExists(file))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .onErrorResume(e -> Mono.just(false))
+                   .then();
+    }
+
+    /**
+     * Товар строки каталога вместе с подготовленной картинкой
+     */
+    private record Prepared(Ware ware, WareImage image) {}
+
+    /**
+     * Источник каталога: файл каталога, либо zip архив с файлом catalog.csv / catalog.ndjson и картинками
+     */
+    private class CatalogSource implements Closeable {
+        private final ZipFile zip;
+        private final CatalogFormat format;
+        private final BufferedReader reader;
+        private final Map<String, Integer> columns = new HashMap<>();  //Столбцы CSV по заголовку
+        private final long firstLine;                                   //Номер первой строки данных
+
+        CatalogSource(Path file, CatalogFormat format, boolean archive) throws IOException {
+            if (!archive) {
+                this.zip = null;
+                this.format = format;
+                this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            } else {
+                this.zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8);
+                ZipEntry catalog = Optional.ofNullable(zip.getEntry("catalog.csv"))
+                                           .or(() -> Optional.ofNullable(zip.getEntry("catalog.ndjson")))
+                                           .orElse(null);
+                if (catalog == null) {
+                    zip.close();
+                    throw new IllegalArgumentException("Archive has neither catalog.csv nor catalog.ndjson");
+                }
+                this.format = catalog.getName().endsWith(".csv") ? CatalogFormat.CSV : CatalogFormat.NDJSON;
+                this.reader = new BufferedReader(new InputStreamReader(zip.getInputStream(catalog),
+                                                                       StandardCharsets.UTF_8));
+            }
+
+            if (this.format == CatalogFormat.CSV) {                    //Заголовок CSV определяет порядок столбцов
+                String header = reader.readLine();
+                List<String> fields = header == null ? List.of() : CsvLine.split(header);
+                for (int i = 0; i < fields.size(); i++)
+                    columns.put(fields.get(i).trim().toLowerCase(), i);
+                if (!columns.containsKey("title") || !columns.containsKey("price")) {
+                    close();
+                    throw new IllegalArgumentException("CSV header must have " + CSV_COLUMNS + " columns");
+                }
+                firstLine = 2;
+            } else {
+                firstLine = 1;
+            }
+        }
+
+        CatalogRow parse(String line) throws IOException {
+            if (format == CatalogFormat.NDJSON)
+                return objectMapper.readValue(line, CatalogRow.class);
+
+            List<String> fields = CsvLine.split(line);
+            String price = field(fields, "price");
+            return new CatalogRow(field(fields, "title"),
+                                  field(fields, "description"),
+                                  price == null || price.isBlank() ? null : Float.parseFloat(price.trim()),
+                                  field(fields, "image"));
+        }
+
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            return index == null || index >= fields.size() ? null : fields.get(index);
+        }
+
+        /**
+         * Байты картинки из архива
+         */
+        byte[] image(String name) throws IOException {
+            ZipEntry entry = zip == null ? null : zip.getEntry(name);
+            if (entry == null)
+                throw new IllegalArgumentException("image " + name + " is not in the archive");
+
+            try (InputStream in = zip.getInputStream(entry)) {
+                byte[] image = in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxImageSize + 1));
+                if (image.length > maxImageSize)
+                    throw new IllegalArgumentException("image " + name + " exceeds the limit of " + maxImageSize + " bytes");
+                return image;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+                if (zip != null)
+                    zip.close();
+            } catch (IOException e) {
+                log.warn("Import source was not closed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.yandex.practicum.intershop.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.cache.CacheMetrics;
+import ru.yandex.practicum.intershop.model.Item;
+import ru.yandex.practicum.intershop.model.ItemAction;
+import ru.yandex.practicum.intershop.repository.ItemRep;
+import ru.yandex.practicum.intershop.repository.OrderRep;
+import ru.yandex.practicum.intershop.service.CartService;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Корзина в Redis с отложенной записью в базу (write-behind).
+ * Активная корзина - хэш CART:{orderId} (товар -> количество), изменения - HINCRBY без транзакции в базе.
+ * Изменённые корзины отмечаются в множестве CART_DIRTY и периодически пакетно пишутся в items;
+ * перед оформлением заказа корзина пишется синхронно.
+ * Порядок добавления товаров хранится в том же хэше: поле # - счётчик, поля #{товар} - номера добавления.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "intershop.cart.store", havingValue = "redis", matchIfMissing = true)
+public class RedisCartServiceImpl implements CartService {
+    private static final String CART = "CART";
+    private static final String DIRTY = "CART_DIRTY";
+    private static final String LOADED = "-";                   //Служебное поле: корзина загружена из базы
+    private static final String ADDED = "#";                    //Служебные поля порядка добавления товаров
+
+    private final ItemRep itemRep;
+    private final OrderRep orderRep;
+    private final ReactiveRedisTemplate<String, String> redisStringTempl;
+    private final RedisScript<Long> cartChangeScript;
+    private final RedisScript<Long> cartLoadScript;
+    private final Duration cartTtl;
+    private final int flushBatch;
+    private final CacheMetrics cartMetrics;                     //Промах - корзину пришлось загрузить из базы
+
+    public RedisCartServiceImpl(ItemRep itemRep,
+                                OrderRep orderRep,
+                                ReactiveRedisTemplate<String, String> redisStringTempl,
+                                RedisScript<Long> cartChangeScript,
+                                RedisScript<Long> cartLoadScript,
+                                @Value("${intershop.cart.ttl:P7D}") Duration cartTtl,
+                                @Value("${intershop.cart.flush-batch:500}") int flushBatch,
+                                MeterRegistry meterRegistry) {
+        this.itemRep = itemRep;
+        this.orderRep = orderRep;
+        this.redisStringTempl = redisStringTempl;
+        this.cartChangeScript = cartChangeScript;
+        this.cartLoadScript = cartLoadScript;
+        this.cartTtl = cartTtl;
+        this.flushBatch = flushBatch;
+        this.cartMetrics = new CacheMetrics(meterRegistry, CART);
+    }
+
+    @Override
+    public Mono<Void> changeCount(long orderId, long wareId, ItemAction action) {
+        return change(orderId, wareId, action)
+                .flatMap(count -> count >= 0 ?
+                        Mono.just(count).doOnNext(c -> cartMetrics.redisHit()) :
+                        load(orderId).then(change(orderId, wareId, action)))   //Корзины нет в Redis - загрузить
+                .then();
+    }
+
+    private Mono<Long> change(long orderId, long wareId, ItemAction action) {
+        return redisStringTempl.execute(cartChangeScript,
+                                        List.of(key(orderId), DIRTY),
+                                        List.of(String.valueOf(wareId),
+                                                action.name(),
+                                                String.valueOf(orderId),
+                                                String.valueOf(cartTtl.toMillis())))
+                               .next();
+    }
+
+    @Override
+    public Mono<List<Item>> getItems(long orderId) {
+        return entries(orderId)
+                .flatMap(entries -> entries.isEmpty() ?
+                        load(orderId).then(entries(orderId)) :
+                        Mono.just(entries).doOnNext(e -> cartMetrics.redisHit()))
+                .map(entries -> {
+                    List<Item> items = new ArrayList<>(entries.size());
+                    entries.forEach((field, value) -> {
+                        int count = Integer.parseInt(value);
+                        if (isWare(field) && count > 0)
+                            items.add(new Item(orderId, Long.parseLong(field), count));
+                    });
+                    //Последние добавленные - первыми
+                    items.sort(Comparator.comparingLong((Item item) -> added(entries, item.getWareId())).reversed());
+                    return items;
+                });
+    }
+
+    /**
+     * Количества заданных товаров - одним HMGET (вместе со служебным полем, чтобы отличить незагруженную корзину)
+     */
+    @Override
+    public Mono<LongIntMap> getCounts(long orderId, Collection<Long> wareIds) {
+        List<String> fields = new ArrayList<>(wareIds.size() + 1);
+        fields.add(LOADED);
+        wareIds.forEach(id -> fields.add(String.valueOf(id)));
+
+        return values(orderId, fields)
+                .flatMap(values -> values.get(0) != null ?
+                        Mono.just(values).doOnNext(v -> cartMetrics.redisHit()) :
+                        load(orderId).then(values(orderId, fields)))
+                .map(values -> {
+                    LongIntMap counts = new LongIntMap(wareIds.size());
+                    for (int i = 1; i < fields.size(); i++) {
+                        String value = values.get(i);
+                        if (value != null && Integer.parseInt(value) > 0)
+                            counts.put(Long.parseLong(fields.get(i)), Integer.parseInt(value));
+                    }
+                    return counts;
+                });
+    }
+
+    /**
+     * Запись корзины в базу.
+     * Корзина снимается с отметки до чтения - изменения, сделанные во время записи, отметят её снова.
+     * Количества пишутся абсолютными значениями, поэтому повторная запись безопасна.
+     */
+    @Override
+    public Mono<Void> flush(long orderId) {
+        return redisStringTempl.opsForSet()
+                .remove(DIRTY, String.valueOf(orderId))
+                .then(write(orderId));
+    }
+
+    /**
+     * Запись корзины, уже снятой с отметки; если запись не удалась, отметка возвращается
+     */
+    private Mono<Void> write(long orderId) {
+        return entries(orderId)
+                .flatMap(entries -> {
+                    LongIntMap counts = new LongIntMap(entries.size());
+                    entries.forEach((field, value) -> {
+                        if (isWare(field))
+                            counts.put(Long.parseLong(field), Integer.parseInt(value));
+                    });
+                    return counts.isEmpty() ?
+                            Mono.<Void>empty() :
+                            itemRep.writeCounts(orderId, counts)
+                                   .then(orderRep.refreshTotals(orderId))     //Итоги заказа - вместе с корзиной
+                                   .then();
+                })
+                .onErrorResume(e -> redisStringTempl.opsForSet()        //Не записалось - вернуть отметку
+                                                    .add(DIRTY, String.valueOf(orderId))
+                                                    .then(Mono.error(e)));
+    }
+
+    @Override
+    public Mono<Void> release(long orderId) {
+        return redisStringTempl.delete(key(orderId)).then();
+    }
+
+    /**
+     * Периодическая запись изменённых корзин в базу (пачками по flushBatch корзин).
+     * Корзины забираются из отметки атомарно (SPOP), поэтому несколько экземпляров приложения
+     * не пишут одну и ту же корзину одновременно.
+     */
+    @Scheduled(initialDelayString = "${intershop.cart.flush-interval:PT2S}",
+               fixedDelayString = "${intershop.cart.flush-interval:PT2S}")
+    public Mono<Void> flushDirty() {
+        return redisStringTempl.opsForSet()
+                .pop(DIRTY, flushBatch)
+                .concatMap(orderId -> write(Long.parseLong(orderId))
+                        .onErrorResume(e -> {
+                            log.warn("Cart {} was not flushed: {}", orderId, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    /**
+     * Загрузка корзины из базы в Redis (если её там ещё нет).
+     * Элементы идут по убыванию идентификатора, номера добавления им даются в обратном порядке.
+     */
+    private Mono<Void> load(long orderId) {
+        cartMetrics.miss();
+        return cartMetrics.timeLoad(itemRep.findAllByOrderIdOrderByIdDesc(orderId).collectList())
+                .flatMap(items -> {
+                    List<String> args = new ArrayList<>();
+                    args.add(String.valueOf(cartTtl.toMillis()));
+                    args.add(LOADED);
+                    args.add("0");
+                    args.add(ADDED);
+                    args.add(String.valueOf(items.size()));
+                    for (int i = 0; i < items.size(); i++) {
+                        Item item = items.get(i);
+                        args.add(String.valueOf(item.getWareId()));
+                        args.add(String.valueOf(item.getCount()));
+                        args.add(ADDED + item.getWareId());
+                        args.add(String.valueOf(items.size() - i));
+                    }
+                    return redisStringTempl.execute(cartLoadScript, List.of(key(orderId)), args).then();
+                });
+    }
+
+    private Mono<Map<String, String>> entries(long orderId) {
+        return redisStringTempl.<String, String>opsForHash()
+                .entries(key(orderId))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Mono<List<String>> values(long orderId, List<String> fields) {
+        return redisStringTempl.<String, String>opsForHash().multiGet(key(orderId), fields);
+    }
+
+    /**
+     * Поле хэша корзины - количество товара (а не служебное поле)
+     */
+    private static boolean isWare(String field) {
+        return !LOADED.equals(field) && !field.startsWith(ADDED);
+    }
+
+    /**
+     * Номер добавления товара в корзину (0 - неизвестен)
+     */
+    private static long added(Map<String, String> entries, long wareId) {
+        String value = entries.get(ADDED + wareId);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static String key(long orderId) {
+        return CART + ":" + orderId;
+    }
+}
@@ -1,27 +1,38 @@
 package ru.yandex.practicum.intershop.service.impl;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.yandex.practicum.intershop.dto.InWareDTO;
 import ru.yandex.practicum.intershop.dto.ItemDTO;
 import ru.yandex.practicum.intershop.dto.OrderDTO;
+import ru.yandex.practicum.intershop.dto.OrderPageDTO;
 import ru.yandex.practicum.intershop.mapper.ItemMapper;
 import ru.yandex.practicum.intershop.mapper.OrderMapper;
 import ru.yandex.practicum.intershop.mapper.WareMapper;
 import ru.yandex.practicum.intershop.model.*;
 import ru.yandex.practicum.intershop.repository.ItemRep;
 import ru.yandex.practicum.intershop.repository.OrderRep;
+import ru.yandex.practicum.intershop.service.CartService;
+import ru.yandex.practicum.intershop.service.ImageService;
 import ru.yandex.practicum.intershop.service.ShopService;
 
 import lombok.extern.slf4j.Slf4j;
 import ru.yandex.practicum.intershop.service.WareService;
+import ru.yandex.practicum.intershop.service.WarmupService;
+import ru.yandex.practicum.intershop.util.LongIntMap;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Сервис для работы с корзиной покупок
@@ -33,11 +44,28 @@ public class ShopServiceImpl implements ShopService {
     private final ItemRep itemRep;
     private final OrderRep orderRep;
     private final WareService wareServ;
+    private final ImageService imageServ;
+    private final CartService cartServ;
+    private final WarmupService warmupServ;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean exactTotal;       //Считать общее количество товаров в выборке каталога
 
-    public ShopServiceImpl(ItemRep itemRep, OrderRep orderRep, WareService wareServ) {
+    public ShopServiceImpl(ItemRep itemRep,
+                           OrderRep orderRep,
+                           WareService wareServ,
+                           ImageService imageServ,
+                           CartService cartServ,
+                           WarmupService warmupServ,
+                           TransactionalOperator transactionalOperator,
+                           @Value("${intershop.catalog.exact-total:true}") boolean exactTotal) {
         this.itemRep = itemRep;
         this.orderRep = orderRep;
         this.wareServ = wareServ;
+        this.imageServ = imageServ;
+        this.cartServ = cartServ;
+        this.warmupServ = warmupServ;
+        this.transactionalOperator = transactionalOperator;
+        this.exactTotal = exactTotal;
     }
 
     /**
@@ -48,47 +76,8 @@ public class ShopServiceImpl implements ShopService {
      * @return
      */
     @Override
-    @Transactional
     public Mono<Void> changeItemAmount(Long id, ItemAction action) {
-        return switch (action) {
-            case DELETE -> delItem(id);
-            case PLUS -> incItem(id);
-            case MINUS -> decItem(id);
-        };
-    }
-
-    private Mono<Void> delItem(Long id) {
-        return geActiveOrder()
-                .flatMap(order -> itemRep.deleteByOrderIdAndWareId(order.getId(), id));
-    }
-
-    private Mono<Void> decItem(Long id) {
-        Mono<Order> order = geActiveOrder().cache();
-
-        return order.flatMap(o -> itemRep.findByOrderIdAndWareId(o.getId(), id))
-                    .flatMap(it -> {
-                                        if (it.getCount() > 1) {
-                                            it.setCount(it.getCount() - 1);
-                                            return itemRep.save(it);
-                                        } else {
-                                            return itemRep.deleteByOrderIdAndWareId(it.getOrderId(), id);
-                                        }
-                                    }
-                        )
-                .then();
-    }
-
-    @Transactional
-    private Mono<Void> incItem(Long id) {
-        Mono<Order> order = geActiveOrder().cache();
-
-        return order.flatMap(o -> itemRep.findByOrderIdAndWareId(o.getId(), id))
-                    .switchIfEmpty(order.map(o -> new Item(o.getId(), id, 0)))
-                    .flatMap(it -> {it.setCount(it.getCount() + 1);
-                                    return itemRep.save(it);
-                                   }
-                            )
-                    .then();
+        return activeOrderId().flatMap(orderId -> cartServ.changeCount(orderId, id, action));
     }
 
     /**
@@ -99,32 +88,51 @@ public class ShopServiceImpl implements ShopService {
     @Override
     public Mono<OrderDTO> getOrder() {
         return geActiveOrder().map(OrderMapper::toOrderDTO)
-                              .flatMap(order -> getOrderItems(order.getId())
-                                      .collectList()
-                                      .map(items -> {
-                                          order.setItems(items);
-                                          order.setTotalSum((float)items.stream()
-                                                                 .mapToDouble(i -> i.getCount() * i.getPrice())
-                                                                 .sum());
-                                          return order;
-                                      })
+                              .flatMap(order -> getCartItems(order.getId())
+                                      .map(items -> fillOrder(order, items))
                               );
     }
 
     /**
-     * Получение/создание активной корзины
+     * Корзина текущего посетителя (из контекста запроса; вне веб-запроса - корзина по умолчанию)
+     */
+    private Mono<CartSession> cartSession() {
+        return Mono.deferContextual(ctx -> Mono.just(ctx.getOrDefault(CartSession.class,
+                                                                      CartSession.anonymous())));
+    }
+
+    /**
+     * Получение/создание активной корзины сессии.
+     * Одновременные первые запросы сессии создают только один заказ (см. ActiveOrderRep).
      *
      * @return Заказ
      */
-    @Transactional
     private Mono<Order> geActiveOrder() {
-        return orderRep.findActiveOrder()
-                       .switchIfEmpty(Mono.defer(() -> {
-                                               Order activeOrder = new Order();
-                                               activeOrder.setStat(OrderStatus.NEW);
-                                               return orderRep.save(activeOrder);
-                                           })
-                       );
+        return cartSession().flatMap(cart -> orderRep.findActiveOrder(cart.getId())
+                .switchIfEmpty(Mono.defer(() -> orderRep.claimActiveOrder(cart.getId())
+                                                        .then(orderRep.findActiveOrder(cart.getId()))))
+                .doOnNext(order -> cart.setOrderId(order.getId())));
+    }
+
+    /**
+     * Идентификатор активной корзины сессии (создаётся при необходимости).
+     * После первого обращения берётся из сессии - без запроса к базе.
+     */
+    private Mono<Long> activeOrderId() {
+        return cartSession().flatMap(cart -> cart.getOrderId() != null ?
+                Mono.just(cart.getOrderId()) :
+                geActiveOrder().map(Order::getId));
+    }
+
+    /**
+     * Идентификатор активной корзины сессии, только если она уже есть (без создания)
+     */
+    private Mono<Long> findActiveOrderId() {
+        return cartSession().flatMap(cart -> cart.getOrderId() != null ?
+                Mono.just(cart.getOrderId()) :
+                orderRep.findActiveOrder(cart.getId())
+                        .doOnNext(order -> cart.setOrderId(order.getId()))
+                        .map(Order::getId));
     }
 
     /**
@@ -135,52 +143,103 @@ public class ShopServiceImpl implements ShopService {
      */
     @Override
     public Mono<ItemDTO> getItem(Long id) {
-        return geActiveOrder()
-                .flatMap(order -> itemRep.findByOrderIdAndWareId(order.getId(), id))
-                .switchIfEmpty(Mono.just(new Item()))
+        return getCartCounts(List.of(id))
                 .zipWith(wareServ.findById(id)
                                  .map(ItemMapper::toItemDTO)
                 )
-                .map(itemAndWare -> {
-                    itemAndWare.getT2().setCount(itemAndWare.getT1().getCount());
-                    return itemAndWare.getT2();
+                .map(countsAndWare -> {
+                    countsAndWare.getT2().setCount(countsAndWare.getT1().getOrDefault(id, 0));
+                    return countsAndWare.getT2();
                 });
     }
 
     /**
-     * Совершение покупки по активной корзине
+     * Оформление заказа по активной корзине.
+     * Корзина пишется в базу, цены фиксируются в элементах, сумма - в заказе; всё в одной транзакции.
+     * Повторная отправка с тем же токеном возвращает уже оформленный заказ.
+     *
+     * @param checkoutToken Токен оформления
+     * @return Идентификатор оформленного заказа
      */
     @Override
-    @Transactional
-    public Mono<Void> buy() {
-        return geActiveOrder().flatMap(order -> {
-                                                    order.setStat(OrderStatus.BUY);
-                                                    return orderRep.save(order);
-                                                }
-                                       )
-                              .then();
+    public Mono<Long> buy(String checkoutToken) {
+        String token = checkoutToken != null ? checkoutToken : UUID.randomUUID().toString();
+
+        return orderRep.findByCheckoutToken(token)
+                       .map(Order::getId)
+                       .switchIfEmpty(Mono.defer(() -> findActiveOrderId().flatMap(orderId -> checkout(orderId, token))))
+                       //Одновременная повторная отправка - заказ уже оформлен первой
+                       .switchIfEmpty(Mono.defer(() -> orderRep.findByCheckoutToken(token).map(Order::getId)))
+                       .flatMap(orderId -> cartSession()
+                               .doOnNext(cart -> cart.setOrderId(null))   //Следующая корзина сессии - новый заказ
+                               .thenReturn(orderId));
     }
 
     /**
-     * Получение всех заказов (история заказов)
+     * Оформление заказа (пусто, если заказ уже не активен).
+     * Корзина в Redis освобождается только после фиксации транзакции.
+     */
+    private Mono<Long> checkout(long orderId, String token) {
+        return cartServ.flush(orderId)
+                       .then(itemRep.snapshotLines(orderId))
+                       .then(orderRep.checkout(orderId, token))
+                       .as(transactionalOperator::transactional)
+                       .flatMap(updated -> updated > 0 ?
+                               cartServ.release(orderId).thenReturn(orderId) :
+                               Mono.empty());
+    }
+
+    /**
+     * Получение страницы истории заказов посетителя и общих заказов без владельца (keyset пагинация по идентификатору заказа)
      *
-     * @return Список заказов
+     * @param beforeId  Курсор - заказы с идентификатором меньше заданного (null - с последнего)
+     * @param size      Размер страницы
+     * @param summary   Режим сводки: только количество товаров и сумма, без списка элементов
+     * @return Страница заказов
      */
     @Override
-    public Flux<OrderDTO> getAllOrders() {
-        return orderRep.findAllByOrderByIdDesc()
-                       .map(OrderMapper::toOrderDTO)
-                       .flatMap(order -> getOrderItems(order.getId())
-                                            .collectList()
-                                            .map(items -> {
-                                                order.setItems(items);
-                                                order.setTotalSum((float)items.stream()
-                                                     .mapToDouble(i -> i.getCount() * i.getPrice())
-                                                     .sum()
-                                                );
-                                                return order;
-                                            })
-                       );
+    public Mono<OrderPageDTO> getOrders(Long beforeId, int size, boolean summary) {
+        long cursor = beforeId == null ? Long.MAX_VALUE : beforeId;
+
+        //Выбирается на один заказ больше, чтобы узнать, есть ли следующая страница
+        Flux<OrderDTO> orders = cartSession().flatMapMany(cart -> summary ?
+                orderRep.findVisibleSummariesBefore(cart.getId(), cursor, size + 1)
+                        .map(OrderMapper::toOrderDTO) :
+                orderRep.findVisibleBefore(cart.getId(), cursor, size + 1)
+                        .collectList()
+                        .flatMapMany(this::withItems));
+
+        return orders.collectList()
+                     .map(list -> {
+                         boolean hasNext = list.size() > size;
+                         List<OrderDTO> page = hasNext ? list.subList(0, size) : list;
+                         return OrderPageDTO.builder()
+                                            .orders(page)
+                                            .nextCursor(hasNext ? page.get(page.size() - 1).getId() : null)
+                                            .build();
+                     });
+    }
+
+    /**
+     * Заполнение заказов элементами
+     * @param orders    Заказы
+     * @return          Заказы с элементами и суммами
+     */
+    private Flux<OrderDTO> withItems(List<Order> orders) {
+        if (orders.isEmpty())
+            return Flux.empty();
+
+        //Элементы всех заказов и их товары - одним запросом каждые
+        return itemRep.findAllByOrderIdInOrderByIdDesc(orders.stream().map(Order::getId).toList())
+                      .collectList()
+                      .flatMap(items -> wareServ.findAllByIds(items.stream()
+                                                                   .map(Item::getWareId)
+                                                                   .toList())
+                                                .map(wares -> toItemDTOs(items, wares)))
+                      .flatMapIterable(itemsByOrder -> orders.stream()
+                              .map(o -> fillOrder(OrderMapper.toOrderDTO(o),
+                                                  itemsByOrder.getOrDefault(o.getId(), List.of())))
+                              .toList());
     }
 
     /**
@@ -191,7 +250,56 @@ public class ShopServiceImpl implements ShopService {
      */
     @Override
     public Mono<byte[]> getImage(Long id) {
-        return wareServ.findById(id).map(Ware::getImage);
+        return imageServ.getImage(id);
+    }
+
+    /**
+     * Получение метаданных изображения товара
+     *
+     * @param id Идентификатор товара
+     * @return Метаданные картинки
+     */
+    @Override
+    public Mono<WareImageInfo> getImageInfo(Long id) {
+        return imageServ.getImageInfo(id);
+    }
+
+    /**
+     * Получение уменьшенного варианта изображения товара
+     *
+     * @param id        Идентификатор товара
+     * @param variant   Вариант
+     * @return Картинка
+     */
+    @Override
+    public Mono<byte[]> getImage(Long id, ImageVariant variant) {
+        return imageServ.getImage(id, variant);
+    }
+
+    /**
+     * Получение метаданных варианта изображения товара
+     *
+     * @param id        Идентификатор товара
+     * @param variant   Вариант
+     * @return Метаданные картинки
+     */
+    @Override
+    public Mono<WareImageInfo> getImageInfo(Long id, ImageVariant variant) {
+        return imageServ.getImageInfo(id, variant);
+    }
+
+    /**
+     * Чтение байт изображения товара по частям
+     *
+     * @param info      Метаданные картинки
+     * @param variant   Вариант
+     * @param offset    Смещение первого байта
+     * @param length    Число байт
+     * @return Части картинки
+     */
+    @Override
+    public Flux<DataBuffer> readImage(WareImageInfo info, ImageVariant variant, long offset, long length) {
+        return imageServ.readImage(info, variant, offset, length);
     }
 
     /**
@@ -199,9 +307,51 @@ public class ShopServiceImpl implements ShopService {
      * @param ware Товар
      */
     @Override
-    @Transactional
     public Mono<Void> addWare(InWareDTO ware)  {
-        return wareServ.save(WareMapper.toWare(ware)).then();
+        //Хэш картинки считается один раз и служит версией её URL
+        return saveWare(ware, imageServ.prepare(ware.getImage(), ware.getImageContentType()));
+    }
+
+    /**
+     * Добавление товара в базу с потоковой загрузкой картинки: части пишутся в хранилище
+     * по мере поступления, хэш и размер считаются по частям, превышение допустимого размера
+     * прерывает загрузку. Товар, картинка и её хэш (версия URL) фиксируются одной транзакцией;
+     * при ошибке индексы каталога сбрасываются - товара, добавленного в них, в базе нет.
+     *
+     * @param ware  Товар (без байт картинки)
+     * @param image Содержимое картинки
+     */
+    @Override
+    public Mono<Void> addWare(InWareDTO ware, Flux<DataBuffer> image) {
+        return wareServ.save(WareMapper.toWare(ware))
+                       .flatMap(saved -> imageServ.write(saved.getId(), image, ware.getImageContentType())
+                                                  .flatMap(info -> {
+                                                      saved.setImageHash(info.contentHash());
+                                                      return wareServ.save(saved);
+                                                  })
+                                                  .thenReturn(saved.getId()))
+                       .as(transactionalOperator::transactional)
+                       .onErrorResume(e -> wareServ.invalidateCache().then(Mono.error(e)))
+                       .doOnNext(imageServ::scheduleVariants)
+                       .then();
+    }
+
+    /**
+     * Товар и картинка сохраняются в одной транзакции;
+     * уменьшенные варианты картинки строятся в фоне уже после её фиксации
+     */
+    private Mono<Void> saveWare(InWareDTO ware, WareImage image) {
+        Ware newWare = WareMapper.toWare(ware);
+        newWare.setImageHash(image != null ? image.getContentHash() : null);
+
+        return wareServ.save(newWare)
+                       .flatMap(saved -> imageServ.save(saved.getId(), image).thenReturn(saved.getId()))
+                       .as(transactionalOperator::transactional)
+                       .doOnNext(wareId -> {
+                           if (image != null)
+                               imageServ.scheduleVariants(wareId);
+                       })
+                       .then();
     }
 
     /**
@@ -214,54 +364,67 @@ public class ShopServiceImpl implements ShopService {
      */
     @Override
     public Mono<Page<ItemDTO>> findAllItemsPaginated(String search, SortKind sortKind, Pageable pageable) {
-        //Всего товаров в выборке
-        Mono<Long> totalCount = wareServ.wareCount(search);
-
-        //Все доступные/отфильтрованные товары на странице
-        Mono<List<ItemDTO>> wareDTOList = wareServ.searchWares(search, sortKind, pageable)
-                                                  .map(ItemMapper::toItemDTO)
-                                                  .collectList();
-
-        //Товары уже находящиеся в корзине
-        Mono<List<ItemDTO>> orderItemsList = getOrder().map(OrderDTO::getItems);
-
-        //Актуализация количества для товаров, которые уже находятся в корзине
-        wareDTOList = wareDTOList.zipWith(orderItemsList, (wareList, orderItems) -> {
-            for (var orderItem : orderItems) {    //Товары заказа
-                for (var ware : wareList) {       //товары на странице
-                    if (ware.getId() == orderItem.getId())
-                        ware.setCount(orderItem.getCount());
-                }
-            }
-            return wareList;
-        });
+        //Товары страницы вместе с общим количеством - одним запросом
+        Mono<Page<ItemDTO>> wareDTOPage = wareServ.searchPage(search, sortKind, pageable, exactTotal)
+                                                  .map(page -> page.map(ItemMapper::toItemDTO));
+
+        //Первая страница поиска учитывается для прогрева кэша (параллельно с выборкой)
+        if (pageable.getPageNumber() == 0)
+            wareDTOPage = wareDTOPage.zipWith(warmupServ.recordSearch(search).thenReturn(Boolean.TRUE),
+                                              (page, recorded) -> page);
+
+        //Актуализация количества для товаров страницы, которые уже находятся в корзине
+        return wareDTOPage.flatMap(page -> getCartCounts(page.map(ItemDTO::getId).getContent())
+                .map(counts -> {
+                    for (var ware : page)
+                        ware.setCount(counts.getOrDefault(ware.getId(), 0));
+                    return page;
+                }));
+    }
 
-        return wareDTOList.zipWith(totalCount, (wareList, waresCount) -> new PageImpl<ItemDTO>(wareList,
-                                                                                               pageable,
-                                                                                               waresCount));
+    /**
+     * Количества заданных товаров в активной корзине.
+     * Читаются только ware_id и count - без загрузки самих товаров корзины.
+     * Если корзины ещё нет, она не создаётся.
+     *
+     * @param wareIds   Идентификаторы товаров
+     * @return          Количества по идентификаторам товаров
+     */
+    private Mono<LongIntMap> getCartCounts(List<Long> wareIds) {
+        if (wareIds.isEmpty())
+            return Mono.just(new LongIntMap());
+
+        return findActiveOrderId()
+                       .flatMap(orderId -> cartServ.getCounts(orderId, wareIds))
+                       .defaultIfEmpty(new LongIntMap());
     }
 
     /**
-     * Получение заданного заказа
+     * Получение заданного заказа (только заказа текущего посетителя или общего заказа без владельца)
      * @param id Идентификатор заказа
      * @return
      */
     @Override
     public Mono<OrderDTO> getOrder(Long id) {
-        return orderRep.findById(id)
+        return cartSession().flatMap(cart -> orderRep.findVisibleById(id, cart.getId()))
                        .map(OrderMapper::toOrderDTO)
                        .flatMap(order -> getOrderItems(order.getId())
                                            .collectList()
-                                           .map(items -> {
-                                               order.setItems(items);
-                                               order.setTotalSum((float)items.stream()
-                                                    .mapToDouble(i -> i.getCount() * i.getPrice())
-                                                    .sum());
-                                                return order;
-                                           })
+                                           .map(items -> fillOrder(order, items))
                        );
     }
 
+    /**
+     * Элементы активной корзины (элементы - из хранилища корзин в порядке добавления, товары - пакетно из кэша)
+     * @param orderId   Идентификатор заказа-корзины
+     * @return          Список элементов
+     */
+    private Mono<List<ItemDTO>> getCartItems(long orderId) {
+        return cartServ.getItems(orderId)
+                       .flatMap(items -> wareServ.findAllByIds(items.stream().map(Item::getWareId).toList())
+                                                 .map(wares -> toItemDTOs(items, wares).getOrDefault(orderId, List.of())));
+    }
+
     /**
      * Получение только элементов заказа
      * @param id    Идентификатор Заказа
@@ -269,12 +432,45 @@ public class ShopServiceImpl implements ShopService {
      */
     private Flux<ItemDTO> getOrderItems(Long id) {
         return itemRep.findAllByOrderIdOrderByIdDesc(id)
-                      .flatMap(item -> wareServ.findById(item.getWareId())
-                                              .map(ItemMapper::toItemDTO)
-                                              .map(dto -> {
-                                                  dto.setCount(item.getCount());
-                                                  return dto;
-                                              })
-                      );
+                      .collectList()
+                      .flatMap(items -> wareServ.findAllByIds(items.stream().map(Item::getWareId).toList())
+                                                .map(wares -> toItemDTOs(items, wares)))
+                      .flatMapIterable(itemsByOrder -> itemsByOrder.getOrDefault(id, List.of()));
+    }
+
+    /**
+     * Сборка элементов заказов из элементов корзины и уже загруженных товаров
+     * @param items Элементы заказов
+     * @param wares Товары по идентификаторам
+     * @return      Элементы по идентификаторам заказов (в исходном порядке)
+     */
+    private static Map<Long, List<ItemDTO>> toItemDTOs(List<Item> items, Map<Long, Ware> wares) {
+        Map<Long, List<ItemDTO>> ret = new HashMap<>();
+        for (Item item : items) {
+            ItemDTO dto = ItemMapper.toItemDTO(wares.get(item.getWareId()), item);
+            if (dto != null) {
+                dto.setCount(item.getCount());
+                ret.computeIfAbsent(item.getOrderId(), k -> new ArrayList<>()).add(dto);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Заполнение заказа элементами и общей суммой
+     * @param order Заказ
+     * @param items Элементы заказа
+     * @return      Заказ
+     */
+    private static OrderDTO fillOrder(OrderDTO order, List<ItemDTO> items) {
+        order.setItems(items);
+        if (order.getTotalSum() == null) {          //Сумма оформленного заказа уже хранится в нём
+            BigDecimal total = BigDecimal.ZERO;
+            for (ItemDTO item : items)
+                total = total.add(new BigDecimal(Float.toString(item.getPrice()))   //Без погрешности float
+                                          .multiply(BigDecimal.valueOf(item.getCount())));
+            order.setTotalSum(total);
+        }
+        return order;
     }
 }
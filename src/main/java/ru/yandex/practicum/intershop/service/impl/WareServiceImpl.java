@@ -1,18 +1,43 @@
 package ru.yandex.practicum.intershop.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.cache.CacheMetrics;
+import ru.yandex.practicum.intershop.cache.SingleFlight;
+import ru.yandex.practicum.intershop.cache.SortedWareIndex;
+import ru.yandex.practicum.intershop.model.CatalogChangedEvent;
+import ru.yandex.practicum.intershop.model.SearchPage;
 import ru.yandex.practicum.intershop.model.SortKind;
 import ru.yandex.practicum.intershop.model.Ware;
 import ru.yandex.practicum.intershop.repository.WareRep;
 import ru.yandex.practicum.intershop.service.WareService;
+import ru.yandex.practicum.intershop.util.SampledLogger;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
 
 /**
  * Сервис для работы со справочником товаров
@@ -23,18 +48,91 @@ import java.nio.charset.StandardCharsets;
 public class WareServiceImpl implements WareService {
     private static final String WARE_CACHE = "WARE";
     private static final String SEARCH_CACHE = "SEARCH";
-    private static final String COUNT_CACHE = "COUNT";
+    private static final String CATALOG_VERSION = "CATALOG_VERSION";   //Поколение кэша страниц поиска
+    private static final String CATALOG_CHANNEL = "CATALOG_INVALIDATE"; //Канал сброса локальных кэшей экземпляров
 
     private final WareRep wareRep;
     private final ReactiveRedisTemplate<String, Ware> redisWareTempl;
     private final ReactiveRedisTemplate<String, String> redisStringTempl;
+    private final Duration searchTtl;                                   //Время жизни страниц поиска
+
+    //Страницы каталога без поиска - из отсортированных индексов в Redis (null - индексы выключены)
+    private final SortedWareIndex wareIndex;
+
+    //Одновременные промахи по одному ключу выполняют только один запрос в базу
+    private final SingleFlight<SearchPage> searchLoads = new SingleFlight<>();
+
+    //Локальный (L1) кэш экземпляра перед Redis: самые горячие товары и страницы поиска
+    private final Cache<Long, Ware> nearWares;
+    private final Cache<String, SearchPage> nearPages;
+    private final Duration versionTtl;                                  //Как долго доверять локальному поколению
+    private volatile long localVersion = -1;
+    private volatile long localVersionReadAt;
+    private Disposable invalidationListener;
+
+    //Попадания и промахи по пространствам имён кэша
+    private final CacheMetrics wareMetrics;
+    private final CacheMetrics searchMetrics;
+    private final SampledLogger cacheLog;                               //Промахи и записи кэша - с выборкой
+    private final ApplicationEventPublisher eventPublisher;             //Оповещение о смене поколения (прогрев)
 
     public WareServiceImpl(WareRep wareRep,
                            ReactiveRedisTemplate<String, Ware> redisWareTempl,
-                           ReactiveRedisTemplate<String, String> redisStringTempl) {
+                           ReactiveRedisTemplate<String, String> redisStringTempl,
+                           @Value("${intershop.cache.search-ttl:PT10M}") Duration searchTtl,
+                           @Value("${intershop.cache.near.max-size:10000}") long nearMaxSize,
+                           @Value("${intershop.cache.near.ttl:PT30S}") Duration nearTtl,
+                           @Value("${intershop.cache.near.version-ttl:PT5S}") Duration versionTtl,
+                           @Value("${intershop.cache.index.enabled:true}") boolean indexEnabled,
+                           @Value("${intershop.cache.index.build-timeout:PT5M}") Duration indexBuildTimeout,
+                           @Value("${intershop.logging.sample-rate:100}") int logSampleRate,
+                           MeterRegistry meterRegistry,
+                           ApplicationEventPublisher eventPublisher) {
         this.wareRep = wareRep;
         this.redisWareTempl = redisWareTempl;
         this.redisStringTempl = redisStringTempl;
+        this.searchTtl = searchTtl;
+        this.versionTtl = versionTtl;
+        this.wareIndex = indexEnabled ? new SortedWareIndex(redisStringTempl, indexBuildTimeout) : null;
+        this.nearWares = Caffeine.newBuilder().maximumSize(nearMaxSize).expireAfterWrite(nearTtl).recordStats().build();
+        this.nearPages = Caffeine.newBuilder().maximumSize(nearMaxSize).expireAfterWrite(nearTtl).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearWares, "near." + WARE_CACHE);
+        CaffeineCacheMetrics.monitor(meterRegistry, nearPages, "near." + SEARCH_CACHE);
+        this.wareMetrics = new CacheMetrics(meterRegistry, WARE_CACHE);
+        this.searchMetrics = new CacheMetrics(meterRegistry, SEARCH_CACHE);
+        this.cacheLog = new SampledLogger(log, Level.DEBUG, logSampleRate);
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Подписка на сброс локальных кэшей, когда каталог меняется на любом экземпляре
+     */
+    @PostConstruct
+    public void listenInvalidation() {
+        invalidationListener = redisStringTempl.listenToChannel(CATALOG_CHANNEL)
+                .map(message -> Long.parseLong(message.getMessage()))
+                .subscribe(this::onCatalogChanged,
+                           e -> log.warn("Catalog invalidation listener failed: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    public void stopInvalidation() {
+        if (invalidationListener != null)
+            invalidationListener.dispose();
+    }
+
+    /**
+     * Переход на новое поколение каталога: локальные страницы сбрасываются
+     */
+    private void onCatalogChanged(long version) {
+        synchronized (this) {
+            if (version > localVersion) {
+                localVersion = version;
+                localVersionReadAt = System.nanoTime();
+            }
+        }
+        nearPages.invalidateAll();
+        nearWares.invalidateAll();
     }
 
     /**
@@ -45,142 +143,375 @@ public class WareServiceImpl implements WareService {
      */
     @Override
     public Mono<Ware> findById(Long id) {
+        Ware near = nearWares.getIfPresent(id);                         //Сначала - локальный кэш
+        if (near != null) {
+            wareMetrics.nearHit();
+            return Mono.just(near);
+        }
+
         return redisWareTempl.opsForValue().get(WARE_CACHE + ":" + id)    //Попытка взять товар из кэша
+                .onErrorResume(SerializationException.class, e -> Mono.empty())   //Не читается - как промах
+                .doOnNext(ware -> wareMetrics.redisHit())
                 .switchIfEmpty(Mono.defer(() -> {
-                    System.out.println(WARE_CACHE + ":" + id + " was not in cache.");
+                    wareMetrics.miss();
+                    cacheLog.event().addKeyValue("cache", WARE_CACHE).addKeyValue("id", id).log("Cache miss");
 
-                    return wareRep.findById(id).map(ware -> {   //Если в кэше нет - взять из базы
-                        redisWareTempl.opsForValue()
-                                      .set(WARE_CACHE + ":" + ware.getId(), ware)
-                                      .subscribe(count -> log.info("Sent to Redis ({}, {});",
-                                              WARE_CACHE + ":" + ware.getId(), ware.getTitle()));
-                        return ware;
-                        }
-                    );
-                }));
+                    return wareMetrics.timeLoad(wareRep.findById(id))   //Если в кэше нет - взять из базы
+                            .flatMap(ware -> cacheWrite(redisWareTempl.opsForValue()   //и положить в кэш
+                                                                      .set(WARE_CACHE + ":" + ware.getId(), ware),
+                                                        WARE_CACHE)
+                                    .thenReturn(ware));
+                }))
+                .doOnNext(ware -> nearWares.put(id, ware));
     }
 
     /**
-     * Поиск товаров с сортировкой и пагинацией (с кэшированием)
+     * Пакетное получение товаров по идентификаторам (с кэшированием в Redis).
+     * Кэш опрашивается одним MGET, промахи догружаются из базы одним запросом
+     * и одним MSET возвращаются в кэш.
      *
-     * @param search    Строка поиска
-     * @param pageable  Атрибуты страницы
-     * @return          Товары страницы
+     * @param ids   Идентификаторы товаров
+     * @return      Найденные товары по идентификаторам
      */
     @Override
-    public Flux<Ware> searchWares(String search, SortKind sortKind, Pageable pageable) {
-        //Определение ключа кэширования результата поиска
-        String searchKey = SEARCH_CACHE + ":" +
-                sortKind.name() + "_SORT:" +
-                ((search == null || search.isEmpty()) ?
-                        "NO_SEARCH" : URLEncoder.encode(search.toUpperCase(), StandardCharsets.UTF_8)) + ":" +
-                pageable.getPageNumber() + ":" +
-                pageable.getPageSize();
-
-        System.out.println(searchKey);
-
-        return redisStringTempl.opsForList()
-                .range(searchKey, 0, -1)                      //Поискать страницу в кэше
-                .collectList()
-                .flatMapMany(ids -> {
-                    if (ids == null || ids.isEmpty()) {                 //Если в кэше нет
-                        System.out.println(searchKey + " was not in cache.");
-                        return findAllIds(search, sortKind, pageable)   //Взять из базы
-                                .map(id -> {                            //Результат дополнительно положить в кэш
-                                        redisStringTempl.opsForList()
-                                                    .rightPush(searchKey, String.valueOf(id))
-                                                    .subscribe(count -> log.info("Sent to Redis {}:{}", searchKey, id));
-                                            return id;
-                                        }
-                                )
-                                .flatMap(this::findById);
-                    } else {
-                        return Flux.fromIterable(ids)
-                                   .map(Long::valueOf)
-                                   .flatMap(this::findById);
+    public Mono<Map<Long, Ware>> findAllByIds(Collection<Long> ids) {
+        Map<Long, Ware> found = new HashMap<>();
+        List<Long> distinctIds = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {                      //Сначала - локальный кэш
+            Ware near = nearWares.getIfPresent(id);
+            if (near != null)
+                found.put(id, near);
+            else
+                distinctIds.add(id);
+        }
+        wareMetrics.nearHits(found.size());
+        if (distinctIds.isEmpty())
+            return Mono.just(found);
+
+        List<String> keys = distinctIds.stream().map(id -> WARE_CACHE + ":" + id).toList();
+
+        return redisWareTempl.opsForValue().multiGet(keys)     //Попытка взять товары из кэша
+                .onErrorResume(SerializationException.class,          //Не читается - как промах
+                               e -> Mono.just(Collections.nCopies(keys.size(), null)))
+                .flatMap(cached -> {
+                    List<Long> missing = new ArrayList<>();
+                    for (int i = 0; i < distinctIds.size(); i++) {
+                        Ware ware = cached.get(i);
+                        if (ware != null) {
+                            found.put(distinctIds.get(i), ware);
+                            nearWares.put(distinctIds.get(i), ware);
+                        } else
+                            missing.add(distinctIds.get(i));
                     }
+
+                    wareMetrics.redisHits(distinctIds.size() - missing.size());
+                    if (missing.isEmpty())
+                        return Mono.just(found);
+
+                    wareMetrics.misses(missing.size());
+                    cacheLog.event().addKeyValue("cache", WARE_CACHE).addKeyValue("ids", missing).log("Cache miss");
+
+                    return wareMetrics.timeLoad(wareRep.findAllById(missing)   //Промахи - взять из базы
+                                                       .collectList())
+                            .flatMap(wares -> {
+                                Map<String, Ware> toCache = new HashMap<>();
+                                for (Ware ware : wares) {
+                                    found.put(ware.getId(), ware);
+                                    nearWares.put(ware.getId(), ware);
+                                    toCache.put(WARE_CACHE + ":" + ware.getId(), ware);
+                                }
+                                return toCache.isEmpty() ?                //и положить в кэш
+                                        Mono.just(found) :
+                                        cacheWrite(redisWareTempl.opsForValue().multiSet(toCache), WARE_CACHE)
+                                                .thenReturn(found);
+                            });
                 });
     }
 
     /**
-     * Поиск товаров с сортировкой и пагинацией (из базы)
+     * Запись в кэш в составе цепочки запроса (без отдельной подписки).
+     * Ошибка записи не должна ломать чтение - товар уже получен из базы.
+     */
+    private Mono<Void> cacheWrite(Mono<Boolean> write, String cache) {
+        return write.then()
+                    .onErrorResume(e -> {
+                        log.warn("Cache {} write failed: {}", cache, e.getMessage());
+                        return Mono.empty();
+                    });
+    }
+
+    /**
+     * Получение товаров в порядке следования идентификаторов
+     */
+    private Flux<Ware> findAllInOrder(List<Long> ids) {
+        return findAllByIds(ids).flatMapIterable(wares -> ids.stream()
+                                                             .map(wares::get)
+                                                             .filter(Objects::nonNull)
+                                                             .toList());
+    }
+
+    /**
+     * Страница товаров с поиском, сортировкой и общим количеством (с кэшированием).
+     * Идентификаторы страницы и общее количество берутся из базы одним запросом
+     * и кэшируются под одним ключом, поэтому всегда согласованы между собой.
      *
-     * @param search    Строка поиска
-     * @param pageable  Атрибуты страницы
-     * @return          Товары страницы
-     */
-    private Flux<Long> findAllIds(String search, SortKind sortKind, Pageable pageable) {
-        Flux<Long> ids = null;
-        if (search == null || search.isEmpty()) {
-            ids = switch (sortKind) {
-                case NO    -> wareRep.findAllIdBy(pageable);
-                case ALPHA -> wareRep.findAllIdByOrderByTitle(pageable);
-                case PRICE -> wareRep.findAllIdByOrderByPrice(pageable);
-            };
-        } else {
-            ids = switch (sortKind) {
-                case NO    -> wareRep.findAllIdByTitleLikeIgnoreCase(search, pageable);
-                case ALPHA -> wareRep.findAllIdByTitleLikeIgnoreCaseOrderByTitle(search, pageable);
-                case PRICE -> wareRep.findAllIdByTitleLikeIgnoreCaseOrderByPrice(search, pageable);
-            };
+     * @param search        Строка поиска
+     * @param sortKind      Тип сортировки
+     * @param pageable      Атрибуты страницы
+     * @param exactTotal    Считать общее количество; иначе определяется только наличие следующей страницы
+     * @return              Страница товаров
+     */
+    @Override
+    public Mono<Page<Ware>> searchPage(String search, SortKind sortKind, Pageable pageable, boolean exactTotal) {
+        return catalogVersion().flatMap(version -> {
+            //Определение ключа кэширования результата поиска (в рамках текущего поколения каталога)
+            String searchKey = SEARCH_CACHE + ":v" + version + ":" +
+                    sortKind.name() + "_SORT:" +
+                    ((search == null || search.isEmpty()) ?
+                            "NO_SEARCH" : URLEncoder.encode(search.toUpperCase(), StandardCharsets.UTF_8)) + ":" +
+                    pageable.getPageNumber() + ":" +
+                    pageable.getPageSize() + ":" +
+                    (exactTotal ? "TOTAL" : "HAS_NEXT");
+
+            SearchPage near = nearPages.getIfPresent(searchKey);        //Сначала - локальный кэш
+            if (near != null)
+                searchMetrics.nearHit();
+            Mono<SearchPage> page = near != null ? Mono.just(near) :
+                    redisStringTempl.opsForValue()
+                            .get(searchKey)                                 //Поискать страницу в кэше
+                            .map(WareServiceImpl::decodePage)
+                            .doOnNext(found -> searchMetrics.redisHit())
+                            .switchIfEmpty(Mono.defer(() -> {               //Если в кэше нет
+                                searchMetrics.miss();
+                                cacheLog.event().addKeyValue("cache", SEARCH_CACHE)
+                                                .addKeyValue("key", searchKey)
+                                                .log("Cache miss");
+                                return searchLoads.load(searchKey, () ->
+                                        searchMetrics.timeLoad(loadPage(search, sortKind, pageable, exactTotal))   //Взять из индекса или базы
+                                               .flatMap(found -> cacheWrite(redisStringTempl.opsForValue()   //и положить в кэш
+                                                                                            .set(searchKey, encodePage(found), searchTtl),
+                                                                            SEARCH_CACHE)
+                                                       .thenReturn(found)));
+                            }))
+                            .doOnNext(found -> nearPages.put(searchKey, found));
+
+            return page.flatMap(found -> findAllInOrder(found.ids())
+                    .collectList()
+                    .map(wares -> toPage(wares, pageable, found)));
+        });
+    }
+
+    /**
+     * Загрузка страницы при промахе кэша. Без строки поиска - из отсортированного индекса в Redis
+     * (любая глубина страницы - O(размер страницы)); пока индекс не построен - из базы в том же
+     * порядке, а построение индекса запускается в фоне.
+     */
+    private Mono<SearchPage> loadPage(String search, SortKind sortKind, Pageable pageable, boolean exactTotal) {
+        Mono<SearchPage> fromDb = wareRep.searchPage(search, sortKind, pageable, exactTotal);
+        if (wareIndex == null || (search != null && !search.isEmpty()))
+            return fromDb;
+
+        return wareIndex.page(sortKind, pageable)
+                        .onErrorResume(e -> {
+                            log.warn("Sorted ware index is not available: {}", e.getMessage());
+                            return Mono.empty();
+                        })
+                        .switchIfEmpty(Mono.defer(() -> {
+                            rebuildIndex().subscribe(rebuilt -> {},
+                                                     e -> log.warn("Sorted ware index rebuild failed: {}", e.getMessage()));
+                            return fromDb;
+                        }));
+    }
+
+    /**
+     * Полная перестройка отсортированных индексов каталога (id, название и цена всех товаров).
+     * После подмены индекса - новое поколение кэша поиска: страницы, закэшированные из базы
+     * во время перестройки, не смешиваются со страницами из индекса.
+     * @return  Подменён ли индекс построенным (false - перестройка уже идёт или индексы выключены)
+     */
+    public Mono<Boolean> rebuildIndex() {
+        return wareIndex == null ?
+                Mono.just(false) :
+                wareIndex.rebuild(wareRep.findIndexEntries())
+                         .flatMap(swapped -> swapped ? nextVersion().thenReturn(true) : Mono.just(false));
+    }
+
+    /**
+     * Сборка страницы Spring Data. Если общее количество не считалось,
+     * оно подбирается так, чтобы страница правильно сообщала о наличии следующей.
+     */
+    private static Page<Ware> toPage(List<Ware> wares, Pageable pageable, SearchPage found) {
+        long total = found.total() >= 0 ?
+                found.total() :
+                pageable.getOffset() + found.ids().size() + (found.hasNext() ? 1 : 0);
+        return new PageImpl<>(wares, pageable, total);
+    }
+
+    /**
+     * Страница в кэше хранится одной строкой: "общее количество|есть следующая|id,id,..."
+     */
+    private static String encodePage(SearchPage page) {
+        StringBuilder sb = new StringBuilder()
+                .append(page.total()).append('|')
+                .append(page.hasNext() ? '1' : '0').append('|');
+        for (int i = 0; i < page.ids().size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(page.ids().get(i));
         }
-        return ids;
+        return sb.toString();
+    }
+
+    private static SearchPage decodePage(String value) {
+        String[] parts = value.split("\\|", -1);
+        List<Long> ids = parts[2].isEmpty() ?
+                List.of() :
+                Arrays.stream(parts[2].split(",")).map(Long::valueOf).toList();
+        return new SearchPage(ids, Long.parseLong(parts[0]), "1".equals(parts[1]));
     }
 
     /**
-     * Получение общего количества товаров (для обеспечения пагинации)
-     * @param search    Строка поиска
-     * @return          Количество найденных товаров
+     * Сохранение товара в базе данных.
+     * После записи товар попадает в отсортированные индексы, а поколение кэша поиска
+     * увеличивается - старые страницы перестают читаться и истекают по TTL.
+     *
+     * @param ware  Товар
+     * @return      Сохранённый товар (с присвоенным идентификатором);
+     *              ошибка 404 (ResponseStatusException), если изменяемого товара нет
      */
     @Override
-    public Mono<Long> wareCount(String search) {
-        String cacheKey = (search == null || search.isEmpty()) ?
-                COUNT_CACHE + ":FOR_ALL_WARES" :
-                COUNT_CACHE + ":FOR_SEARCH:" + URLEncoder.encode(search.toUpperCase(), StandardCharsets.UTF_8);
-
-        return redisStringTempl.opsForValue().get(cacheKey)     //Попытка взять счётчик из кэша
-                .map(Long::valueOf)
-                .switchIfEmpty(Mono.defer(() -> {               //Если в кэше нет - взять из базы
-                    System.out.println(cacheKey + " was not in cache.");
-                    Mono<Long> count = (search == null || search.isEmpty()) ?
-                            wareRep.countAllBy() :
-                            wareRep.countAllByTitleLikeIgnoreCase(search);
-
-                    return count.map(c -> {                     //и попутно положить в кэш
-                                redisStringTempl.opsForValue()
-                                        .set(cacheKey, String.valueOf(c))
-                                        .subscribe(sub -> log.info("Sent to Redis {}:{}", cacheKey, c));
-                                return c;
-                            }
-                    );
-                }));
-    }
-
-    /**
-     * Добавление нового товара в базу данных
+    public Mono<Ware> save(Ware ware) {
+        if (ware.getId() == 0)                                          //Новый товар
+            return wareRep.save(ware)
+                          .flatMap(saved -> onInserted(List.of(saved)).thenReturn(saved));
+
+        //Изменение: прежнее название нужно, чтобы убрать товар из индекса по названию
+        return wareRep.findById(ware.getId())
+                      .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                                                                  "Ware " + ware.getId() + " not found")))
+                      .flatMap(previous -> wareRep.save(ware)
+                                                  .flatMap(saved -> (wareIndex == null ?
+                                                                             Mono.<Void>empty() :
+                                                                             wareIndex.update(previous, saved))
+                                                          .then(Mono.fromRunnable(() -> nearWares.invalidate(saved.getId())))
+                                                          .then(redisWareTempl.delete(WARE_CACHE + ":" + saved.getId()))
+                                                          .then(nextVersion())
+                                                          .thenReturn(saved)));
+    }
+
+    /**
+     * Учёт вставленных товаров: добавление в отсортированные индексы и новое поколение кэша поиска
      *
-     * @param ware  Товар
-     * @return      Подписка на событие
+     * @param wares Сохранённые товары (с идентификаторами)
+     * @return      Завершение
      */
     @Override
-    public Mono<Void> save(Ware ware) {
-        flushCache();
-        return wareRep.save(ware).then();
+    public Mono<Void> onInserted(List<Ware> wares) {
+        return (wareIndex == null ? Mono.<Void>empty() : wareIndex.add(wares))
+                .then(nextVersion());
     }
 
     /**
-     * Сброс кэша поиска
-     * @return
+     * Пакетная вставка новых товаров одним пакетным запросом в базу
+     * (кэш страниц поиска сбрасывается вызывающей стороной - один раз на пачку)
+     *
+     * @param wares Новые товары
+     * @return      Сохранённые товары (с присвоенными идентификаторами)
      */
-    private Mono<Void> flushCache() {
-        redisStringTempl.keys(COUNT_CACHE + ":*")
-                .flatMap(redisStringTempl::delete)
-                .subscribe(count -> log.info("Removed from COUNT_CACHE cache {} key.", count));
+    @Override
+    public Mono<List<Ware>> insertAll(List<Ware> wares) {
+        return wareRep.insertAll(wares)
+                      .collectList()
+                      .map(ids -> {
+                          for (int i = 0; i < ids.size(); i++)
+                              wares.get(i).setId(ids.get(i));
+                          return wares;
+                      });
+    }
 
-        redisStringTempl.keys(SEARCH_CACHE + ":*")
-                .flatMap(redisStringTempl::delete)
-                .subscribe(count -> log.info("Removed from SEARCH_CACHE cache {} key.", count));
+    /**
+     * Сброс кэша страниц поиска и отсортированных индексов (после изменений каталога в обход сервиса).
+     * До перестройки индексов страницы без поиска берутся из базы.
+     */
+    @Override
+    public Mono<Void> invalidateCache() {
+        return (wareIndex == null ? Mono.<Void>empty() : wareIndex.reset())
+                .then(nextVersion());
+    }
 
-        return Mono.empty();
+    /**
+     * Переход кэша страниц поиска на новое поколение (атомарный INCR)
+     * с оповещением остальных экземпляров через pub/sub.
+     * Прогрев нового поколения запускается только на этом экземпляре (CatalogChangedEvent) -
+     * остальные берут прогретые страницы из Redis.
+     */
+    private Mono<Void> nextVersion() {
+        return redisStringTempl.opsForValue()
+                .increment(CATALOG_VERSION)
+                .doOnNext(version -> {
+                    log.info("Catalog cache version is {}.", version);
+                    onCatalogChanged(version);
+                    eventPublisher.publishEvent(new CatalogChangedEvent(version));
+                })
+                .flatMap(version -> redisStringTempl.convertAndSend(CATALOG_CHANNEL, String.valueOf(version)))
+                .then();
+    }
+
+    /**
+     * Текущее поколение кэша страниц поиска.
+     * Читается из Redis не чаще раза в versionTtl - в остальное время берётся локальное значение,
+     * которое сразу обновляется по pub/sub при изменении каталога.
+     */
+    private Mono<String> catalogVersion() {
+        long version = localVersion;
+        if (version >= 0 && System.nanoTime() - localVersionReadAt < versionTtl.toNanos())
+            return Mono.just(String.valueOf(version));
+
+        return redisStringTempl.opsForValue()
+                .get(CATALOG_VERSION)
+                .defaultIfEmpty("0")
+                .doOnNext(actual -> {
+                    synchronized (this) {
+                        localVersion = Long.parseLong(actual);
+                        localVersionReadAt = System.nanoTime();
+                    }
+                });
+    }
+
+    /**
+     * Периодическая очистка ключей устаревших поколений (SCAN, без блокирующего KEYS).
+     * Ключи и так истекают по TTL, очистка лишь быстрее освобождает память.
+     * Поколение читается из Redis, а не из локальной копии: с устаревшей копией экземпляр удалил бы
+     * ключи актуального поколения. Предыдущее поколение не удаляется - его страницы ещё дочитывают
+     * запросы и экземпляры, не успевшие узнать о новом поколении; оно истекает по TTL.
+     */
+    @Scheduled(initialDelayString = "${intershop.cache.sweep-interval:PT10M}",
+               fixedDelayString = "${intershop.cache.sweep-interval:PT10M}")
+    public Mono<Void> sweepStaleCache() {
+        return redisStringTempl.opsForValue().get(CATALOG_VERSION).defaultIfEmpty("0").flatMap(actual -> {
+            long oldestKept = Long.parseLong(actual) - 1;
+            return redisStringTempl.scan(ScanOptions.scanOptions()
+                                                    .match(SEARCH_CACHE + ":v*")
+                                                    .count(500)
+                                                    .build())
+                       .filter(key -> generation(key) < oldestKept)
+                       .buffer(500)
+                       .flatMap(keys -> redisStringTempl.unlink(keys.toArray(String[]::new)))
+                       .reduce(0L, Long::sum)
+                       .doOnNext(count -> log.info("Removed {} stale catalog cache keys.", count))
+                       .then();
+        });
+    }
+
+    /**
+     * Поколение ключа кэша поиска "SEARCH:v<поколение>:..." (нераспознанный ключ не считается устаревшим)
+     */
+    private static long generation(String key) {
+        String[] parts = key.split(":");
+        try {
+            return Long.parseLong(parts[1].substring(1));
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
     }
 }
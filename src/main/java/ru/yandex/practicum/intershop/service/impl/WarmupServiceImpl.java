@@ -0,0 +1,231 @@
+package ru.yandex.practicum.intershop.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import ru.yandex.practicum.intershop.model.CatalogChangedEvent;
+import ru.yandex.practicum.intershop.model.SortKind;
+import ru.yandex.practicum.intershop.model.Ware;
+import ru.yandex.practicum.intershop.service.WareService;
+import ru.yandex.practicum.intershop.service.WarmupService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Прогрев кэша каталога после запуска и после изменения каталога.
+ * Прогреваются первые intershop.warmup.pages страниц каждой сортировки без поиска и первые страницы
+ * intershop.warmup.top-searches самых частых поисковых запросов за intershop.warmup.search-window.
+ * Запросы в базу выполняются строго по одному с паузой intershop.warmup.pace, чтобы прогрев
+ * не отнимал соединения у живых запросов. Частые сбросы кэша (например, при импорте)
+ * объединяются: прогрев запускается после паузы intershop.warmup.debounce и не чаще одного за раз.
+ */
+@Slf4j
+@Service
+public class WarmupServiceImpl implements WarmupService {
+    private static final String SEARCH_TERMS = "SEARCH_TERMS";         //Счётчики поисковых запросов по часам
+    private static final String SEARCH_TOP = SEARCH_TERMS + ":TOP";     //Сумма счётчиков за окно
+    private static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_TERM_LENGTH = 100;                     //Более длинные запросы не учитываются
+
+    private final WareService wareServ;
+    private final ReactiveRedisTemplate<String, String> redisStringTempl;
+    private final boolean enabled;
+    private final int pages;                    //Сколько первых страниц каждой сортировки прогревать
+    private final int pageSize;                 //Размер страницы каталога по умолчанию
+    private final int topSearches;              //Сколько самых частых поисковых запросов прогревать
+    private final Duration searchWindow;        //За какой период учитываются поисковые запросы
+    private final Duration pace;                //Пауза перед каждым запросом прогрева
+    private final Duration debounce;            //Пауза, за которую объединяются поводы для прогрева
+    private final Duration maxDuration;         //Дольше прогрев не ждём - приложение готово и без него
+    private final boolean exactTotal;
+    private final Timer warmupTimer;
+
+    private final Sinks.Many<String> triggers = Sinks.many().unicast().onBackpressureBuffer();
+    private volatile boolean warm;
+    private Disposable worker;
+
+    public WarmupServiceImpl(WareService wareServ,
+                             ReactiveRedisTemplate<String, String> redisStringTempl,
+                             @Value("${intershop.warmup.enabled:true}") boolean enabled,
+                             @Value("${intershop.warmup.pages:3}") int pages,
+                             @Value("${intershop.warmup.page-size:10}") int pageSize,
+                             @Value("${intershop.warmup.top-searches:20}") int topSearches,
+                             @Value("${intershop.warmup.search-window:PT24H}") Duration searchWindow,
+                             @Value("${intershop.warmup.pace:PT0.02S}") Duration pace,
+                             @Value("${intershop.warmup.debounce:PT1S}") Duration debounce,
+                             @Value("${intershop.warmup.max-duration:PT2M}") Duration maxDuration,
+                             @Value("${intershop.catalog.exact-total:true}") boolean exactTotal,
+                             MeterRegistry meterRegistry) {
+        this.wareServ = wareServ;
+        this.redisStringTempl = redisStringTempl;
+        this.enabled = enabled;
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.topSearches = topSearches;
+        this.searchWindow = searchWindow;
+        this.pace = pace;
+        this.debounce = debounce;
+        this.maxDuration = maxDuration;
+        this.exactTotal = exactTotal;
+        this.warm = !enabled;                   //Без прогрева приложение готово сразу
+        this.warmupTimer = Timer.builder("intershop.cache.warmup")
+                                .description("Catalog cache warm-up duration")
+                                .register(meterRegistry);
+    }
+
+    /**
+     * Запуск обработчика поводов для прогрева: не больше одного прогрева за раз,
+     * поводы, пришедшие во время прогрева, дают ещё ровно один прогрев
+     */
+    @PostConstruct
+    public void startWorker() {
+        if (!enabled)
+            return;
+
+        worker = triggers.asFlux()
+                .sampleTimeout(reason -> Mono.delay(debounce))
+                .onBackpressureLatest()
+                .concatMap(reason -> {
+                    log.info("Catalog cache warm-up started ({}).", reason);
+                    return warmUp().timeout(maxDuration)
+                                   .onErrorResume(e -> {
+                                       log.warn("Catalog cache warm-up failed: {}", e.toString());
+                                       return Mono.empty();
+                                   })
+                                   .doFinally(signal -> warm = true);
+                }, 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopWorker() {
+        if (worker != null)
+            worker.dispose();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        trigger("startup");
+    }
+
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        trigger("catalog version " + event.version());
+    }
+
+    private synchronized void trigger(String reason) {
+        if (enabled)
+            triggers.tryEmitNext(reason);
+    }
+
+    @Override
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Учёт поискового запроса в счётчике текущего часа (ZINCRBY).
+     * Запрос хранится в верхнем регистре - как в ключе кэша страниц поиска.
+     *
+     * @param search    Строка поиска
+     * @return          Завершение учёта
+     */
+    @Override
+    public Mono<Void> recordSearch(String search) {
+        if (search == null || search.isBlank() || search.length() > MAX_TERM_LENGTH)
+            return Mono.empty();
+
+        String bucket = SEARCH_TERMS + ":" + System.currentTimeMillis() / BUCKET_MILLIS;
+        return redisStringTempl.opsForZSet()
+                .incrementScore(bucket, search.toUpperCase(), 1)
+                .then(redisStringTempl.expire(bucket, searchWindow.plusMillis(BUCKET_MILLIS)))
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Search term was not recorded: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Самые частые поисковые запросы за окно: сумма часовых счётчиков (ZUNIONSTORE) и первые по убыванию
+     */
+    private Flux<String> topSearches() {
+        if (topSearches <= 0)
+            return Flux.empty();
+
+        long current = System.currentTimeMillis() / BUCKET_MILLIS;
+        long buckets = Math.max(1, searchWindow.toMillis() / BUCKET_MILLIS);
+        List<String> others = new ArrayList<>();
+        for (long bucket = current - 1; bucket > current - buckets; bucket--)
+            others.add(SEARCH_TERMS + ":" + bucket);
+
+        return redisStringTempl.opsForZSet()
+                .unionAndStore(SEARCH_TERMS + ":" + current, others, SEARCH_TOP)
+                .thenMany(redisStringTempl.opsForZSet().reverseRange(SEARCH_TOP, Range.closed(0L, topSearches - 1L)));
+    }
+
+    /**
+     * Прогрев: страницы каталога без поиска по всем сортировкам, затем первые страницы частых запросов.
+     * Каждая страница загружается через обычный путь кэша (Redis и локальный кэш, товары страницы - тоже).
+     */
+    @Override
+    public Mono<Void> warmUp() {
+        AtomicInteger warmed = new AtomicInteger();
+
+        Flux<Page<Ware>> catalog = Flux.fromArray(SortKind.values())
+                .filter(sortKind -> sortKind != SortKind.RELEVANCE)    //Без строки поиска - то же, что NO
+                .concatMap(sortKind -> Flux.range(0, pages)
+                        .concatMap(number -> load(null, sortKind, number))
+                        .takeUntil(page -> !page.hasNext()));          //Дальше страниц нет
+
+        Flux<Page<Ware>> searches = topSearches()
+                .onErrorResume(e -> {
+                    log.warn("Top search terms are not available: {}", e.getMessage());
+                    return Flux.empty();
+                })
+                .concatMap(search -> load(search, SortKind.NO, 0));
+
+        return Mono.defer(() -> {
+                       long started = System.nanoTime();
+                       return catalog.concatWith(searches)
+                                     .doOnNext(page -> warmed.incrementAndGet())
+                                     .then()
+                                     .doOnSuccess(done -> {
+                                         long elapsed = System.nanoTime() - started;
+                                         warmupTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                                         log.info("Catalog cache warmed up: {} pages in {} ms.",
+                                                  warmed.get(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+                                     });
+                   });
+    }
+
+    /**
+     * Загрузка одной страницы с паузой перед запросом. Ошибка одной страницы не прерывает прогрев.
+     */
+    private Mono<Page<Ware>> load(String search, SortKind sortKind, int number) {
+        return wareServ.searchPage(search, sortKind, PageRequest.of(number, pageSize), exactTotal)
+                       .delaySubscription(pace)
+                       .onErrorResume(e -> {
+                           log.warn("Warm-up of page {} ({}, {}) failed: {}", number, sortKind, search, e.getMessage());
+                           return Mono.empty();
+                       });
+    }
+}
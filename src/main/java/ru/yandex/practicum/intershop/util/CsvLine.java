@@ -0,0 +1,45 @@
+package ru.yandex.practicum.intershop.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор строки CSV (RFC 4180): поля через запятую, поля в кавычках могут содержать запятые
+ * и удвоенные кавычки. Перевод строки внутри поля не поддерживается - каталог читается построчно.
+ */
+public final class CsvLine {
+    private CsvLine() {
+    }
+
+    public static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (quoted)
+            throw new IllegalArgumentException("unterminated quoted field");
+
+        fields.add(field.toString());
+        return fields;
+    }
+}
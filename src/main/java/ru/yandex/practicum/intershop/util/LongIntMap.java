@@ -0,0 +1,121 @@
+package ru.yandex.practicum.intershop.util;
+
+/**
+ * Компактное отображение long -> int на примитивах (открытая адресация, линейное пробирование).
+ * Без упаковки ключей и значений в объекты - для коротких горячих выборок вроде
+ * количеств товаров корзины на странице каталога.
+ */
+public class LongIntMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize  Ожидаемое число элементов
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Запись значения по ключу (с заменой существующего)
+     */
+    public void put(long key, int value) {
+        int i = indexOf(key);
+        if (!used[i]) {
+            used[i] = true;
+            keys[i] = key;
+            if (++size > keys.length * LOAD_FACTOR) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Значение по ключу
+     * @param key           Ключ
+     * @param defaultValue  Значение, если ключа нет
+     */
+    public int getOrDefault(long key, int defaultValue) {
+        int i = indexOf(key);
+        return used[i] ? values[i] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Обход всех пар ключ-значение (в произвольном порядке)
+     */
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i])
+                action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Обработчик пары ключ-значение (без упаковки в объекты)
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    /**
+     * Ячейка ключа, либо первая свободная ячейка его цепочки пробирования
+     */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (used[i] && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;      //Перемешивание, чтобы подряд идущие id не слипались
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldKeys.length << 1];
+        used = new boolean[oldKeys.length << 1];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int j = indexOf(oldKeys[i]);
+                used[j] = true;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.intershop.util;
+
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал частых событий (промахи кэша, записи в Redis и т.п.) с выборкой: пишется одно событие из rate.
+ * Уровень и выборка проверяются до построения события, поэтому отброшенные события
+ * не формируют строк и не стоят ничего, кроме инкремента счётчика.
+ * События структурные - параметры передаются парами ключ-значение (addKeyValue).
+ */
+public class SampledLogger {
+    private final Logger log;
+    private final Level level;
+    private final int rate;
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * @param log       Журнал
+     * @param level     Уровень событий
+     * @param rate      Писать одно событие из rate (1 - все)
+     */
+    public SampledLogger(Logger log, Level level, int rate) {
+        this.log = log;
+        this.level = level;
+        this.rate = Math.max(1, rate);
+    }
+
+    /**
+     * Построитель события; если уровень выключен или событие не попало в выборку - пустой
+     */
+    public LoggingEventBuilder event() {
+        if (!log.isEnabledForLevel(level) || events.getAndIncrement() % rate != 0)
+            return NOPLoggingEventBuilder.singleton();
+        return rate == 1 ?
+                log.atLevel(level) :
+                log.atLevel(level).addKeyValue("sampleRate", rate);
+    }
+}
@@ -0,0 +1,63 @@
+-- Исходная схема (ранее - schema.sql). IF NOT EXISTS - базы, созданные schema.sql, принимают её без изменений
+CREATE TABLE IF NOT EXISTS wares (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title       VARCHAR(255)  NOT NULL,
+    description VARCHAR(1000),
+    price       DECIMAL,
+    image_hash  VARCHAR(64),
+    created_at  TIMESTAMP DEFAULT (now())
+);
+
+CREATE TABLE IF NOT EXISTS ware_images (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    ware_id     BIGINT NOT NULL,
+    image       BYTEA,
+    content_type VARCHAR(100),
+    content_hash VARCHAR(64),
+    size        BIGINT,
+    created_at  TIMESTAMP DEFAULT (now()),
+    CONSTRAINT uq_ware_images_ware UNIQUE (ware_id),
+    CONSTRAINT fk_ware_images_ref_ware FOREIGN KEY(ware_id) REFERENCES wares(id)
+);
+
+CREATE TABLE IF NOT EXISTS orders (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    stat        VARCHAR(32) NOT NULL,
+    session_id  VARCHAR(64),
+    total_amount DECIMAL,
+    item_count  INT,
+    checkout_token VARCHAR(64),
+    created_at  TIMESTAMP DEFAULT (now())
+);
+
+CREATE TABLE IF NOT EXISTS items (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    order_id    BIGINT NOT NULL,
+    ware_id     BIGINT NOT NULL,
+    count       SMALLINT DEFAULT 1,
+    unit_price  DECIMAL,
+    title       VARCHAR(255),
+    created_at  TIMESTAMP DEFAULT (now()),
+    CONSTRAINT fk_items_ref_order FOREIGN KEY(order_id) REFERENCES orders(id),
+    CONSTRAINT fk_items_ref_ware FOREIGN KEY(ware_id) REFERENCES wares(id)
+);
+
+ALTER TABLE wares ADD COLUMN IF NOT EXISTS image_hash VARCHAR(64);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS session_id VARCHAR(64);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS total_amount DECIMAL;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS checkout_token VARCHAR(64);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS item_count INT;
+ALTER TABLE items ADD COLUMN IF NOT EXISTS unit_price DECIMAL;
+ALTER TABLE items ADD COLUMN IF NOT EXISTS title VARCHAR(255);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_items_order_ware ON items (order_id, ware_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_orders_checkout_token ON orders (checkout_token);
+
+-- Заполнение итогов заказов, созданных до их хранения в orders
+UPDATE orders
+   SET item_count = (SELECT COALESCE(SUM(i.count), 0) FROM items i WHERE i.order_id = orders.id),
+       total_amount = COALESCE(total_amount,
+                               (SELECT COALESCE(SUM(i.count * COALESCE(i.unit_price, w.price)), 0)
+                                  FROM items i JOIN wares w ON w.id = i.ware_id
+                                 WHERE i.order_id = orders.id))
+ WHERE item_count IS NULL;
@@ -0,0 +1,5 @@
+-- Индексы под выборки каталога и корзины.
+-- items(order_id) отдельно не нужен: его покрывает uq_items_order_ware (order_id, ware_id).
+CREATE INDEX IF NOT EXISTS idx_items_ware ON items (ware_id);
+CREATE INDEX IF NOT EXISTS idx_wares_title ON wares (title, id);
+CREATE INDEX IF NOT EXISTS idx_wares_price ON wares (price, id);
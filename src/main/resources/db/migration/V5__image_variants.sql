@@ -0,0 +1,14 @@
+-- Уменьшенные варианты изображений товаров (получаются из исходной картинки в фоне).
+-- content_hash - хэш исходной картинки, из которой получен вариант (версия в URL)
+CREATE TABLE IF NOT EXISTS ware_image_variants (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    ware_id     BIGINT NOT NULL,
+    variant     VARCHAR(16) NOT NULL,
+    image       BYTEA,
+    content_type VARCHAR(100),
+    content_hash VARCHAR(64),
+    size        BIGINT,
+    created_at  TIMESTAMP DEFAULT (now()),
+    CONSTRAINT uq_ware_image_variants UNIQUE (ware_id, variant),
+    CONSTRAINT fk_ware_image_variants_ref_ware FOREIGN KEY(ware_id) REFERENCES wares(id) ON DELETE CASCADE
+);
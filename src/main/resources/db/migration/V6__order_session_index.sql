@@ -0,0 +1,2 @@
+-- История заказов сессии: WHERE session_id = ? AND id < ? ORDER BY id DESC (keyset пагинация)
+CREATE INDEX IF NOT EXISTS idx_orders_session_id ON orders (session_id, id);
@@ -0,0 +1,4 @@
+-- Единственность активной корзины сессии: частичных индексов в H2 нет - уникальный индекс по вычисляемому столбцу
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS active_session VARCHAR(64)
+    GENERATED ALWAYS AS (CASE WHEN stat = 'NEW' THEN session_id END);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_orders_active_session ON orders (active_session);
@@ -0,0 +1,3 @@
+-- Поиск активной корзины сессии (в PostgreSQL его покрывает частичный индекс uq_orders_active_session)
+CREATE INDEX IF NOT EXISTS idx_orders_session_stat ON orders (session_id, stat);
+CREATE INDEX IF NOT EXISTS idx_orders_stat ON orders (stat);
@@ -0,0 +1,29 @@
+-- Перенос картинок из столбца wares.image прежней схемы (до ware_images) вместе с метаданными, затем столбец удаляется.
+-- Блоков DO в H2 нет: в базе без этого столбца он добавляется пустым только на время переноса
+-- (перенос ничего не делает) и удаляется вместе с остальным.
+-- Тип содержимого определяется по сигнатуре; товары, у которых картинка уже в ware_images, не трогаются.
+ALTER TABLE wares ADD COLUMN IF NOT EXISTS image BYTEA;
+
+INSERT INTO ware_images (ware_id, image, content_type, content_hash, size)
+SELECT w.id,
+       w.image,
+       CASE
+           WHEN SUBSTRING(w.image, 1, 8) = X'89504e470d0a1a0a' THEN 'image/png'
+           WHEN SUBSTRING(w.image, 1, 3) = X'ffd8ff' THEN 'image/jpeg'
+           WHEN SUBSTRING(w.image, 1, 4) = X'47494638' THEN 'image/gif'
+           WHEN SUBSTRING(w.image, 1, 4) = X'52494646'
+            AND SUBSTRING(w.image, 9, 4) = X'57454250' THEN 'image/webp'
+           ELSE 'application/octet-stream'
+       END,
+       LOWER(RAWTOHEX(HASH('SHA-256', w.image))),
+       OCTET_LENGTH(w.image)
+  FROM wares w
+ WHERE w.image IS NOT NULL
+   AND NOT EXISTS (SELECT 1 FROM ware_images i WHERE i.ware_id = w.id);
+
+-- Хэш картинки - версия в URL изображения товара
+UPDATE wares
+   SET image_hash = (SELECT i.content_hash FROM ware_images i WHERE i.ware_id = wares.id)
+ WHERE image_hash IS NULL;
+
+ALTER TABLE wares DROP COLUMN image;
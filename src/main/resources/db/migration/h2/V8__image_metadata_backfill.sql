@@ -0,0 +1,25 @@
+-- Метаданные картинок, сохранённых без них (до расчёта хэша, типа и размера при загрузке):
+-- без хэша картинка отдаётся без ETag, без типа - как octet-stream, размер нужен для отдачи частями.
+UPDATE ware_images
+   SET size = COALESCE(OCTET_LENGTH(image), 0)
+ WHERE size IS NULL;
+
+UPDATE ware_images
+   SET content_hash = LOWER(RAWTOHEX(HASH('SHA-256', image)))
+ WHERE content_hash IS NULL
+   AND image IS NOT NULL;
+
+UPDATE ware_images
+   SET content_type = CASE
+           WHEN SUBSTRING(image, 1, 8) = X'89504e470d0a1a0a' THEN 'image/png'
+           WHEN SUBSTRING(image, 1, 3) = X'ffd8ff' THEN 'image/jpeg'
+           WHEN SUBSTRING(image, 1, 4) = X'47494638' THEN 'image/gif'
+           WHEN SUBSTRING(image, 1, 4) = X'52494646'
+            AND SUBSTRING(image, 9, 4) = X'57454250' THEN 'image/webp'
+           ELSE 'application/octet-stream'
+       END
+ WHERE content_type IS NULL;
+
+UPDATE wares
+   SET image_hash = (SELECT i.content_hash FROM ware_images i WHERE i.ware_id = wares.id)
+ WHERE image_hash IS NULL;
@@ -0,0 +1,9 @@
+-- Индексы полнотекстового поиска и единственность активной корзины сессии (ранее - schema-postgresql.sql)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_wares_fts ON wares
+    USING gin (to_tsvector('russian', coalesce(title, '') || ' ' || coalesce(description, '')));
+CREATE INDEX IF NOT EXISTS idx_wares_title_trgm ON wares USING gin (title gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_wares_description_trgm ON wares USING gin (description gin_trgm_ops);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_orders_active_session ON orders (session_id) WHERE stat = 'NEW';
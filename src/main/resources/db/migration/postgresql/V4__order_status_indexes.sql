@@ -0,0 +1,2 @@
+-- Заказы в статусе NEW (активные корзины) - малая часть таблицы: частичный индекс
+CREATE INDEX IF NOT EXISTS idx_orders_new ON orders (id) WHERE stat = 'NEW';
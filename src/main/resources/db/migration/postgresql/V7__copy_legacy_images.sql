@@ -0,0 +1,33 @@
+-- Перенос картинок из столбца wares.image прежней схемы (до ware_images) вместе с метаданными, затем столбец удаляется.
+-- В базах, созданных без этого столбца, перенос не выполняется.
+-- Тип содержимого определяется по сигнатуре; товары, у которых картинка уже в ware_images, не трогаются.
+-- Тело DO - в обычных кавычках: скрипт делится на запросы по ';' без учёта строк в $$.
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+                WHERE table_schema = current_schema() AND table_name = ''wares'' AND column_name = ''image'') THEN
+        INSERT INTO ware_images (ware_id, image, content_type, content_hash, size)
+        SELECT w.id,
+               w.image,
+               CASE
+                   WHEN substring(w.image FROM 1 FOR 8) = ''\x89504e470d0a1a0a''::bytea THEN ''image/png''
+                   WHEN substring(w.image FROM 1 FOR 3) = ''\xffd8ff''::bytea THEN ''image/jpeg''
+                   WHEN substring(w.image FROM 1 FOR 4) = ''\x47494638''::bytea THEN ''image/gif''
+                   WHEN substring(w.image FROM 1 FOR 4) = ''\x52494646''::bytea
+                    AND substring(w.image FROM 9 FOR 4) = ''\x57454250''::bytea THEN ''image/webp''
+                   ELSE ''application/octet-stream''
+               END,
+               encode(sha256(w.image), ''hex''),
+               octet_length(w.image)
+          FROM wares w
+         WHERE w.image IS NOT NULL
+           AND NOT EXISTS (SELECT 1 FROM ware_images i WHERE i.ware_id = w.id);
+
+        ALTER TABLE wares DROP COLUMN image;
+    END IF;
+END';
+
+-- Хэш картинки - версия в URL изображения товара
+UPDATE wares
+   SET image_hash = (SELECT i.content_hash FROM ware_images i WHERE i.ware_id = wares.id)
+ WHERE image_hash IS NULL;
@@ -0,0 +1,25 @@
+-- Метаданные картинок, сохранённых без них (до расчёта хэша, типа и размера при загрузке):
+-- без хэша картинка отдаётся без ETag, без типа - как octet-stream, размер нужен для отдачи частями.
+UPDATE ware_images
+   SET size = COALESCE(octet_length(image), 0)
+ WHERE size IS NULL;
+
+UPDATE ware_images
+   SET content_hash = encode(sha256(image), 'hex')
+ WHERE content_hash IS NULL
+   AND image IS NOT NULL;
+
+UPDATE ware_images
+   SET content_type = CASE
+           WHEN substring(image FROM 1 FOR 8) = '\x89504e470d0a1a0a'::bytea THEN 'image/png'
+           WHEN substring(image FROM 1 FOR 3) = '\xffd8ff'::bytea THEN 'image/jpeg'
+           WHEN substring(image FROM 1 FOR 4) = '\x47494638'::bytea THEN 'image/gif'
+           WHEN substring(image FROM 1 FOR 4) = '\x52494646'::bytea
+            AND substring(image FROM 9 FOR 4) = '\x57454250'::bytea THEN 'image/webp'
+           ELSE 'application/octet-stream'
+       END
+ WHERE content_type IS NULL;
+
+UPDATE wares
+   SET image_hash = (SELECT i.content_hash FROM ware_images i WHERE i.ware_id = wares.id)
+ WHERE image_hash IS NULL;
@@ -0,0 +1,4 @@
+-- Сортировка по названию - побайтно (COLLATE "C"), как в отсортированном индексе каталога в Redis
+-- (ZSET "название\0id"): страницы из базы и из индекса идут в одном порядке.
+CREATE INDEX IF NOT EXISTS idx_wares_title_c ON wares (title COLLATE "C", id);
+DROP INDEX IF EXISTS idx_wares_title;
@@ -0,0 +1,24 @@
+-- Изменение количества товара в корзине
+-- KEYS[1] - хэш корзины, KEYS[2] - множество корзин, ожидающих записи в базу
+-- ARGV[1] - товар, ARGV[2] - действие (PLUS/MINUS/DELETE), ARGV[3] - заказ, ARGV[4] - время жизни корзины, мс
+-- Возвращает новое количество, либо -1, если корзина ещё не загружена из базы
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+
+local count = 0
+if ARGV[2] ~= 'DELETE' then
+    count = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2] == 'PLUS' and 1 or -1)
+end
+if count <= 0 then
+    -- Нулевое количество сохраняется, чтобы при записи в базу удалить строку
+    count = 0
+    redis.call('HSET', KEYS[1], ARGV[1], 0)
+elseif count == 1 and ARGV[2] == 'PLUS' then
+    -- Товар только что добавлен: запоминается порядковый номер добавления
+    redis.call('HSET', KEYS[1], '#' .. ARGV[1], redis.call('HINCRBY', KEYS[1], '#', 1))
+end
+
+redis.call('PEXPIRE', KEYS[1], ARGV[4])
+redis.call('SADD', KEYS[2], ARGV[3])
+return count
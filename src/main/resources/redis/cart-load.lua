@@ -0,0 +1,10 @@
+-- Загрузка корзины из базы, только если её ещё нет в Redis
+-- KEYS[1] - хэш корзины
+-- ARGV[1] - время жизни корзины, мс; далее пары товар-количество (включая служебное поле)
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+
+redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+redis.call('PEXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -7,23 +7,39 @@ import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import org.springframework.web.reactive.function.BodyInserters;
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
 import ru.yandex.practicum.intershop.dto.ItemDTO;
 import ru.yandex.practicum.intershop.dto.OrderDTO;
+import ru.yandex.practicum.intershop.dto.OrderPageDTO;
+import ru.yandex.practicum.intershop.model.CatalogFormat;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+import ru.yandex.practicum.intershop.model.ImportStatus;
 import ru.yandex.practicum.intershop.model.OrderStatus;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
+import ru.yandex.practicum.intershop.service.ImportService;
 import ru.yandex.practicum.intershop.service.ShopService;
 
-import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 
 import org.springframework.http.client.MultipartBodyBuilder;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 
 @WebFluxTest
@@ -35,6 +51,9 @@ class ShopControllerMockTest {
 	@MockBean
 	private ShopService shopServ;
 
+	@MockBean
+	private ImportService importServ;
+
 	private final ItemDTO item1 = ItemDTO.builder()
 			.title("Test ware title 1")
 			.description("Test ware description 1")
@@ -58,7 +77,16 @@ class ShopControllerMockTest {
                 .uri("/")
                 .exchange()
                 .expectStatus().is3xxRedirection()  //.isFound()
-                .expectHeader().valueEquals("Location", "/main/items");
+                .expectHeader().valueEquals("Location", "/main/items")
+                .expectCookie().exists("CART_ID")                   //Владелец корзины - постоянная cookie
+                .expectCookie().httpOnly("CART_ID", true);
+
+        //Посетителю с cookie новая не выдаётся
+        webTestClient.get()
+                .uri("/")
+                .cookie("CART_ID", "0f8fad5b-d9cb-469f-a165-70867728950e")
+                .exchange()
+                .expectCookie().doesNotExist("CART_ID");
 	}
 
 	/**
@@ -126,6 +154,44 @@ class ShopControllerMockTest {
 				.expectHeader().valueEquals("Location", "/main/items");
 	}
 
+	/**
+	 * Тест добавления товара: картинка передаётся сервису потоком, слишком большая отклоняется
+	 */
+	@Test
+	void testAddWare() throws Exception {
+		MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+		bodyBuilder.part("title", "Test ware title");
+		bodyBuilder.part("description", "Test ware description");
+		bodyBuilder.part("price", "1");
+		bodyBuilder.part("image", new ByteArrayResource("image".getBytes()) {
+			@Override
+			public String getFilename() {
+				return "image.png";
+			}
+		}).contentType(MediaType.IMAGE_PNG);
+
+		Mockito.when(shopServ.addWare(any(), any()))
+				.thenAnswer(call -> call.<Flux<?>>getArgument(1).then());
+
+		webTestClient.post()
+				.uri("/add/ware")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(bodyBuilder.build()))
+				.exchange()
+				.expectStatus().is3xxRedirection()
+				.expectHeader().valueEquals("Location", "/add/ware");
+
+		Mockito.doReturn(Mono.error(new DataBufferLimitException("Image exceeds the limit")))
+				.when(shopServ).addWare(any(), any());
+
+		webTestClient.post()
+				.uri("/add/ware")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(bodyBuilder.build()))
+				.exchange()
+				.expectStatus().isEqualTo(413);
+	}
+
 	/**
 	 * Тест вызова страницы корзины
 	 */
@@ -133,7 +199,7 @@ class ShopControllerMockTest {
 	void testGetCart() throws Exception {
 		OrderDTO order = OrderDTO.builder()
 				.id(1)
-				.totalSum(100)
+				.totalSum(BigDecimal.valueOf(100))
 				.stat(OrderStatus.NEW)
 				.items(List.of(item1, item2)).build();
 
@@ -181,23 +247,16 @@ class ShopControllerMockTest {
 	 */
 	@Test
 	void testBuy() throws Exception {
-		OrderDTO order = OrderDTO.builder()
-				.id(1)
-				.totalSum(100)
-				.stat(OrderStatus.NEW)
-				.items(List.of(item1, item2)).build();
-
-		Mockito.when(shopServ.getOrder())
-				.thenReturn(Mono.just(order));
-
-		Mockito.when(shopServ.buy())
-				.thenReturn(Mono.empty().then());
+		Mockito.when(shopServ.buy("token-1"))
+				.thenReturn(Mono.just(1L));
 
 		webTestClient.post()
-				.uri("/buy")
+				.uri("/buy?token=token-1")
 				.exchange()
 				.expectStatus().is3xxRedirection()
 				.expectHeader().valueEquals("Location", "/orders/1?newOrder=true");
+
+		Mockito.verify(shopServ, Mockito.never()).getOrder();		//Корзина для покупки не загружается
 	}
 
 	/**
@@ -207,18 +266,21 @@ class ShopControllerMockTest {
 	void testGetOrders() throws Exception {
 		OrderDTO order1 = OrderDTO.builder()
 				.id(1)
-				.totalSum(100)
+				.totalSum(BigDecimal.valueOf(100))
 				.stat(OrderStatus.NEW)
 				.items(List.of(item1, item2)).build();
 
 		OrderDTO order2 = OrderDTO.builder()
 				.id(2)
-				.totalSum(100)
+				.totalSum(BigDecimal.valueOf(100))
 				.stat(OrderStatus.NEW)
 				.items(List.of(item1, item2)).build();
 
-		Mockito.when(shopServ.getAllOrders())
-				.thenReturn(Flux.just(order1, order2));
+		Mockito.when(shopServ.getOrders(any(), Mockito.anyInt(), Mockito.anyBoolean()))
+				.thenReturn(Mono.just(OrderPageDTO.builder()
+											  .orders(List.of(order1, order2))
+											  .nextCursor(1L)
+											  .build()));
 
 		webTestClient.get()
 				.uri("/orders")
@@ -233,6 +295,7 @@ class ShopControllerMockTest {
 					assertTrue(body.contains("Заказ №2")); // Проверяем, что HTML содержит название заказа
 					assertTrue(body.contains(item1.getTitle())); // Проверяем, что HTML содержит название товара
 					assertTrue(body.contains(item2.getTitle())); // Проверяем, что HTML содержит название товара
+					assertTrue(body.contains("/orders?before=1")); // Проверяем, что есть ссылка на следующую страницу
 				});
 	}
 
@@ -243,7 +306,7 @@ class ShopControllerMockTest {
 	void testGetOrder() throws Exception {
 		OrderDTO order = OrderDTO.builder()
 				.id(1)
-				.totalSum(100)
+				.totalSum(BigDecimal.valueOf(100))
 				.stat(OrderStatus.NEW)
 				.items(List.of(item1, item2)).build();
 
@@ -264,4 +327,163 @@ class ShopControllerMockTest {
 					assertTrue(body.contains(item2.getTitle())); // Проверяем, что HTML содержит название товара
 				});
 	}
+
+	/**
+	 * Тест получения картинки товара по версионному URL
+	 */
+	@Test
+	void testGetImage() throws Exception {
+		Mockito.when(shopServ.getImageInfo(any()))
+				.thenReturn(Mono.just(new WareImageInfo(1, "image/png", "abc", 4, LocalDateTime.now())));
+		stubImageBytes(ImageVariant.ORIGINAL, "ware");
+
+		webTestClient.get()
+				.uri("/images/1?v=abc")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.IMAGE_PNG)
+				.expectHeader().valueEquals("ETag", "\"abc\"")
+				.expectHeader().valueMatches("Cache-Control", ".*immutable.*")
+				.expectBody(byte[].class).isEqualTo("ware".getBytes());
+
+		//Запрос части картинки
+		webTestClient.get()
+				.uri("/images/1?v=abc")
+				.header("Range", "bytes=1-2")
+				.exchange()
+				.expectStatus().isEqualTo(206)
+				.expectHeader().valueEquals("Content-Range", "bytes 1-2/4")
+				.expectBody(byte[].class).isEqualTo("ar".getBytes());
+
+		//Диапазон за пределами картинки
+		webTestClient.get()
+				.uri("/images/1?v=abc")
+				.header("Range", "bytes=10-20")
+				.exchange()
+				.expectStatus().isEqualTo(416)
+				.expectHeader().valueEquals("Content-Range", "bytes */4");
+	}
+
+	/**
+	 * Тест отдачи картинки без метаданных (загруженной до расчёта хэша и типа)
+	 */
+	@Test
+	void testGetImageWithoutMetadata() throws Exception {
+		Mockito.when(shopServ.getImageInfo(any()))
+				.thenReturn(Mono.just(new WareImageInfo(1, null, null, 4, null)));
+		stubImageBytes(ImageVariant.ORIGINAL, "ware");
+
+		webTestClient.get()
+				.uri("/images/1?v=abc")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_OCTET_STREAM)
+				.expectHeader().doesNotExist("ETag")
+				.expectCookie().doesNotExist("CART_ID")
+				.expectHeader().value("Cache-Control", value -> assertTrue(value.contains("no-cache")))
+				.expectBody(byte[].class).isEqualTo("ware".getBytes());
+	}
+
+	/**
+	 * Тест запроса уменьшенного варианта картинки и возврата исходной, пока вариант не построен
+	 */
+	@Test
+	void testGetImageVariant() throws Exception {
+		Mockito.when(shopServ.getImageInfo(any(), any()))
+				.thenReturn(Mono.just(new WareImageInfo(1, "image/jpeg", "abc", 2, LocalDateTime.now())));
+		stubImageBytes(ImageVariant.THUMB, "th");
+
+		webTestClient.get()
+				.uri("/images/1?v=abc&size=THUMB")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals("ETag", "\"abc-THUMB\"")
+				.expectHeader().value("Cache-Control", value -> assertTrue(value.contains("immutable")))
+				.expectBody(byte[].class).isEqualTo("th".getBytes());
+
+		Mockito.doReturn(Mono.empty()).when(shopServ).getImageInfo(any(), any());
+		Mockito.when(shopServ.getImageInfo(any()))
+				.thenReturn(Mono.just(new WareImageInfo(1, "image/png", "abc", 4, LocalDateTime.now())));
+		stubImageBytes(ImageVariant.ORIGINAL, "ware");
+
+		webTestClient.get()
+				.uri("/images/1?v=abc&size=THUMB")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals("ETag", "\"abc\"")
+				.expectHeader().value("Cache-Control", value -> assertTrue(value.contains("no-cache")))
+				.expectBody(byte[].class).isEqualTo("ware".getBytes());
+
+		webTestClient.get()											//Неизвестный вариант - ошибка запроса
+				.uri("/images/1?v=abc&size=HUGE")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	/**
+	 * Тест условного запроса картинки (клиент уже имеет актуальную версию)
+	 */
+	@Test
+	void testGetImageNotModified() throws Exception {
+		Mockito.when(shopServ.getImageInfo(any()))
+				.thenReturn(Mono.just(new WareImageInfo(1, "image/png", "abc", 4, LocalDateTime.now())));
+
+		webTestClient.get()
+				.uri("/images/1")
+				.header("If-None-Match", "\"abc\"")
+				.exchange()
+				.expectStatus().isNotModified();
+
+		//Байты картинки при этом не читаются
+		Mockito.verify(shopServ, Mockito.never()).readImage(any(), any(), anyLong(), anyLong());
+	}
+
+	/**
+	 * Отдача байт картинки заглушкой сервиса: запрошенный отрезок содержимого одной частью
+	 */
+	private void stubImageBytes(ImageVariant variant, String content) {
+		Mockito.doAnswer(invocation -> {
+			int offset = Math.toIntExact(invocation.<Long>getArgument(2));
+			int length = Math.toIntExact(invocation.<Long>getArgument(3));
+			return Flux.just(DefaultDataBufferFactory.sharedInstance
+									 .wrap(Arrays.copyOfRange(content.getBytes(), offset, offset + length)));
+		}).when(shopServ).readImage(any(), eq(variant), anyLong(), anyLong());
+	}
+
+	/**
+	 * Тест запуска массового импорта и запроса его хода
+	 */
+	@Test
+	void testImportWares() throws Exception {
+		Mockito.when(importServ.startImport(eq(CatalogFormat.NDJSON), anyBoolean(), any()))
+				.thenAnswer(call -> call.<Flux<?>>getArgument(2)
+										.then(Mono.just(ImportProgressDTO.builder()
+																		 .id("job")
+																		 .status(ImportStatus.RUNNING)
+																		 .build())));
+		Mockito.when(importServ.getProgress("job"))
+				.thenReturn(Mono.just(ImportProgressDTO.builder().id("job").status(ImportStatus.DONE).imported(1).build()));
+		Mockito.when(importServ.getProgress("unknown"))
+				.thenReturn(Mono.empty());
+
+		webTestClient.post()
+				.uri("/import/wares")
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.bodyValue("{\"title\": \"Test ware title\", \"price\": 1}\n")
+				.exchange()
+				.expectStatus().isAccepted()
+				.expectHeader().valueEquals("Location", "/import/wares/job")
+				.expectBody().jsonPath("$.status").isEqualTo("RUNNING");
+
+		webTestClient.get()
+				.uri("/import/wares/job")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.imported").isEqualTo(1);
+
+		webTestClient.get()
+				.uri("/import/wares/unknown")
+				.exchange()
+				.expectStatus().isNotFound();
+	}
 }
@@ -1,23 +1,84 @@
 package ru.yandex.practicum.intershop;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.r2dbc.connection.init.ScriptUtils;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import ru.yandex.practicum.intershop.cache.BinaryWareSerializer;
+import ru.yandex.practicum.intershop.configuration.SchemaMigrator;
+import ru.yandex.practicum.intershop.dto.ImportProgressDTO;
 import ru.yandex.practicum.intershop.dto.InWareDTO;
+import ru.yandex.practicum.intershop.dto.ItemDTO;
+import ru.yandex.practicum.intershop.dto.OrderDTO;
+import ru.yandex.practicum.intershop.dto.OrderPageDTO;
+import ru.yandex.practicum.intershop.model.CartSession;
+import ru.yandex.practicum.intershop.model.CatalogFormat;
+import ru.yandex.practicum.intershop.model.ImageVariant;
+import ru.yandex.practicum.intershop.model.ImportStatus;
+import ru.yandex.practicum.intershop.model.Item;
 import ru.yandex.practicum.intershop.model.ItemAction;
+import ru.yandex.practicum.intershop.model.Order;
 import ru.yandex.practicum.intershop.model.OrderStatus;
+import ru.yandex.practicum.intershop.model.SearchPage;
 import ru.yandex.practicum.intershop.model.SortKind;
 import ru.yandex.practicum.intershop.model.Ware;
+import ru.yandex.practicum.intershop.model.WareImageInfo;
 import ru.yandex.practicum.intershop.repository.ItemRep;
 import ru.yandex.practicum.intershop.repository.OrderRep;
+import ru.yandex.practicum.intershop.repository.WareImageRep;
+import ru.yandex.practicum.intershop.repository.WareImageVariantRep;
 import ru.yandex.practicum.intershop.repository.WareRep;
+import ru.yandex.practicum.intershop.service.ImportService;
 import ru.yandex.practicum.intershop.service.ShopService;
+import ru.yandex.practicum.intershop.service.WarmupService;
+import ru.yandex.practicum.intershop.service.impl.ImageServiceImpl;
+import ru.yandex.practicum.intershop.service.impl.RedisCartServiceImpl;
+import ru.yandex.practicum.intershop.service.impl.WareServiceImpl;
+import ru.yandex.practicum.intershop.service.impl.WarmupServiceImpl;
+import ru.yandex.practicum.intershop.util.LongIntMap;
+import ru.yandex.practicum.intershop.metrics.WarmupHealthIndicator;
+import org.springframework.boot.actuate.health.Status;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -37,6 +98,45 @@ public class ShopServiceTest {
 	@Autowired
 	private OrderRep orderRep;
 
+	@Autowired
+	private WareImageRep imageRep;
+
+	@Autowired
+	private WareImageVariantRep variantRep;
+
+	@Autowired
+	private ImageServiceImpl imageServ;
+
+	@Autowired
+	private ImportService importServ;
+
+	@Autowired
+	private ReactiveRedisTemplate<String, String> redisStringTempl;
+
+	@Autowired
+	private WareServiceImpl wareServ;
+
+	@Autowired
+	private RedisCartServiceImpl cartServ;
+
+	@Autowired
+	private SchemaMigrator migrator;
+
+	@Autowired
+	private DatabaseClient databaseClient;
+
+	@Autowired
+	private TransactionalOperator transactionalOperator;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private WarmupService warmupServ;
+
+	@Autowired
+	private WarmupHealthIndicator warmupHealth;
+
 	private final InWareDTO ware1 = InWareDTO.builder()
 			.title("Test ware title")
 			.description("Test ware description")
@@ -44,11 +144,23 @@ public class ShopServiceTest {
 			.price(1F)
 			.build();
 
+	@BeforeEach
+	void beforeEach() {
+		//Индекс каталога перестроен заранее: фоновая перестройка по промаху кэша сменила бы поколение посреди теста
+		rebuildIndex();
+	}
+
 	@AfterEach
 	void afterEach(){
 		//Очистка базы
 		itemRep.deleteAll().block();
 		orderRep.deleteAll().block();
+		redisStringTempl.delete("CART_DIRTY").block();		//Корзины удалённых заказов писать в базу не нужно
+		//Корзины удалённых заказов - тоже: идентификаторы заказов в H2 при следующем запуске начнутся заново
+		redisStringTempl.scan(ScanOptions.scanOptions().match("CART:*").build())
+						.buffer(500)
+						.flatMap(keys -> redisStringTempl.unlink(keys.toArray(String[]::new)))
+						.blockLast();
 	}
 
 	/**
@@ -64,7 +176,7 @@ public class ShopServiceTest {
 			assertNotNull(order);											//Заказ не должен быть пустым
 			assertNotNull(order.getItems());								//В нём должны быть элементы
 			assertEquals(OrderStatus.NEW, order.getStat());					//Заказ должен быть в статусе Новый
-			assertEquals(3F, order.getTotalSum());					//Корректная общая стоимость всех товаров = 3
+			assertAmount(3, order.getTotalSum());					//Корректная общая стоимость всех товаров = 3
 			assertEquals(2, order.getItems().size());				//Предполагается, что в корзине 2 товара
 			assertEquals(1, order.getItems().get(0).getCount());	//У товара корректно заполнено количество
 			assertEquals(1, order.getItems().get(1).getCount());	//У товара корректно заполнено количество
@@ -116,10 +228,143 @@ public class ShopServiceTest {
 			assertNotNull(order.getItems());								//В нём должны быть элементы
 			assertEquals(1, order.getItems().size());				//Должен остаться только один товар
 			assertEquals(2, order.getItems().get(0).getCount());	//Количество оставшегося товара должно быть равно 2
-			assertEquals(2F, order.getTotalSum());					//Корректная сумма заказа = 2
+			assertAmount(2, order.getTotalSum());					//Корректная сумма заказа = 2
 			return Mono.empty();
 		}).block();
 	}
+	/**
+	 * Тест одновременных изменений количества товара: ни одно изменение не теряется
+	 */
+	@Test
+	void testConcurrentItemIncrements() {
+		Flux.range(0, 10)
+			.flatMap(i -> shopServ.changeItemAmount(1000L, ItemAction.PLUS))
+			.blockLast();
+		assertEquals(10, shopServ.getItem(1000L).block().getCount());
+		assertEquals(1, orderRep.count().block());						//Одновременно создана только одна корзина
+
+		Flux.range(0, 9)
+			.flatMap(i -> shopServ.changeItemAmount(1000L, ItemAction.MINUS))
+			.blockLast();
+		assertEquals(1, shopServ.getItem(1000L).block().getCount());
+
+		shopServ.changeItemAmount(1000L, ItemAction.MINUS).block();		//Последний экземпляр удаляет элемент
+		assertEquals(0, shopServ.getOrder().block().getItems().size());
+	}
+
+	/**
+	 * Тест отложенной записи корзины в базу
+	 */
+	@Test
+	void testCartWriteBehind() {
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+		shopServ.changeItemAmount(2000L, ItemAction.PLUS).block();
+		assertEquals(0, itemRep.count().block());						//Изменения пока только в Redis
+		assertEquals(2, shopServ.getItem(1000L).block().getCount());
+
+		cartServ.flushDirty().block();
+		long orderId = shopServ.getOrder().block().getId();
+		assertEquals(2, itemRep.findByOrderIdAndWareId(orderId, 1000L).block().getCount());
+		assertEquals(1, itemRep.findByOrderIdAndWareId(orderId, 2000L).block().getCount());
+
+		shopServ.changeItemAmount(2000L, ItemAction.MINUS).block();		//Удалённый товар удаляется и из базы
+		cartServ.flushDirty().block();
+		assertEquals(1, itemRep.count().block());
+	}
+
+	/**
+	 * Тест порядка товаров в корзине: последние добавленные - первыми, как и в базе
+	 */
+	@Test
+	void testCartItemOrder() {
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+		shopServ.changeItemAmount(2000L, ItemAction.PLUS).block();
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();		//Увеличение количества порядок не меняет
+		assertEquals(List.of(2000L, 1000L),
+					 shopServ.getOrder().block().getItems().stream().map(ItemDTO::getId).toList());
+
+		shopServ.changeItemAmount(1000L, ItemAction.DELETE).block();	//Повторно добавленный товар - снова первый
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+		assertEquals(List.of(1000L, 2000L),
+					 shopServ.getOrder().block().getItems().stream().map(ItemDTO::getId).toList());
+
+		//Корзина, загруженная из базы, сохраняет порядок элементов по убыванию идентификатора
+		long orderId = shopServ.getOrder().block().getId();
+		cartServ.flush(orderId).then(cartServ.release(orderId)).block();
+		itemRep.deleteAll().block();
+		itemRep.save(new Item(orderId, 2000L, 1)).then(itemRep.save(new Item(orderId, 1000L, 3))).block();
+		assertEquals(List.of(1000L, 2000L),
+					 shopServ.getOrder().block().getItems().stream().map(ItemDTO::getId).toList());
+
+		//Плановая запись забирает отмеченные корзины из множества
+		shopServ.changeItemAmount(2000L, ItemAction.PLUS).block();
+		cartServ.flushDirty().block();
+		assertEquals(0L, redisStringTempl.opsForSet().size("CART_DIRTY").block());
+		assertEquals(2, itemRep.findByOrderIdAndWareId(orderId, 2000L).block().getCount());
+	}
+
+	/**
+	 * Тест раздельных корзин разных посетителей и сохранения корзины посетителя между веб-сессиями
+	 */
+	@Test
+	void testCartsPerSession() {
+		InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+		String firstCartId = UUID.randomUUID().toString();
+		CartSession first = CartSession.of(firstCartId, store.createWebSession().block());
+		CartSession second = CartSession.of(UUID.randomUUID().toString(), store.createWebSession().block());
+
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS)
+				.contextWrite(ctx -> ctx.put(CartSession.class, first)).block();
+		shopServ.changeItemAmount(2000L, ItemAction.PLUS)
+				.contextWrite(ctx -> ctx.put(CartSession.class, second)).block();
+
+		OrderDTO firstOrder = shopServ.getOrder().contextWrite(ctx -> ctx.put(CartSession.class, first)).block();
+		OrderDTO secondOrder = shopServ.getOrder().contextWrite(ctx -> ctx.put(CartSession.class, second)).block();
+		assertNotEquals(firstOrder.getId(), secondOrder.getId());
+		assertEquals(firstOrder.getId(), first.getOrderId());			//Идентификатор корзины закэширован в сессии
+		assertEquals(1000L, firstOrder.getItems().get(0).getId());
+		assertEquals(2000L, secondOrder.getItems().get(0).getId());
+
+		//История и заказы другой сессии не видны
+		for (boolean summary : List.of(false, true))
+			assertEquals(List.of(firstOrder.getId()),
+						 shopServ.getOrders(null, 10, summary)
+								 .contextWrite(ctx -> ctx.put(CartSession.class, first)).block()
+								 .getOrders().stream().map(OrderDTO::getId).toList());
+		assertNull(shopServ.getOrder(secondOrder.getId())
+						   .contextWrite(ctx -> ctx.put(CartSession.class, first)).block());
+
+		//Новая веб-сессия (истечение, перезапуск, другой экземпляр) с той же cookie - та же корзина
+		CartSession renewed = CartSession.of(firstCartId, store.createWebSession().block());
+		assertEquals(firstOrder.getId(),
+					 shopServ.getOrder().contextWrite(ctx -> ctx.put(CartSession.class, renewed)).block().getId());
+
+		//Заказы без владельца (до разделения корзин) видны всем
+		Order legacy = new Order();
+		legacy.setStat(OrderStatus.BUY);
+		Long legacyId = orderRep.save(legacy).block().getId();
+		for (CartSession cart : List.of(first, second)) {
+			assertNotNull(shopServ.getOrder(legacyId).contextWrite(ctx -> ctx.put(CartSession.class, cart)).block());
+			assertTrue(shopServ.getOrders(null, 10, true)
+							   .contextWrite(ctx -> ctx.put(CartSession.class, cart)).block()
+							   .getOrders().stream().anyMatch(order -> legacyId.equals(order.getId())));
+		}
+	}
+
+	/**
+	 * Тест количеств товаров корзины на странице каталога
+	 */
+	@Test
+	void testCatalogShowsCartCounts() {
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+		shopServ.changeItemAmount(1000L, ItemAction.PLUS).block();
+
+		Page<ItemDTO> page = shopServ.findAllItemsPaginated(null, SortKind.ALPHA, PageRequest.of(0, 5)).block();
+		assertEquals(1000L, page.getContent().get(0).getId());
+		assertEquals(2, page.getContent().get(0).getCount());		//Товар из корзины - с её количеством
+		assertEquals(0, page.getContent().get(1).getCount());		//Товара нет в корзине
+	}
 
 	/**
 	 * Тест удаления товаров из корзины
@@ -146,7 +391,7 @@ public class ShopServiceTest {
 			assertNotNull(order);											//Заказ не должен быть пустым
 			assertNotNull(order.getItems());								//В нём должны быть элементы
 			assertEquals(1, order.getItems().size());				//Должен остаться только один товар
-			assertEquals(1F, order.getTotalSum());					//Корректная сумма заказа = 1
+			assertAmount(1, order.getTotalSum());					//Корректная сумма заказа = 1
 			return Mono.empty();
 		}).block();
 	}
@@ -160,14 +405,14 @@ public class ShopServiceTest {
 		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
 
 		//Произвести покупку
-		shopServ.buy().block();
+		Long orderId = shopServ.buy(null).block();
 
 		//Вернуть данные из базы и проверить их соответствие
 		shopServ.getOrder(1L).flatMap(order -> {
 			assertNotNull(order);											//Заказ не должен быть пустым
 			assertNotNull(order.getItems());								//В нём должны быть элементы
 			assertEquals(OrderStatus.BUY, order.getStat());					//Заказ должен быть в статусе Buy
-			assertEquals(3F, order.getTotalSum());					//Корректная общая стоимость всех товаров = 3
+			assertAmount(3, order.getTotalSum());					//Корректная общая стоимость всех товаров = 3
 			assertEquals(2, order.getItems().size());				//Предполагается, что в корзине 2 товара
 			assertEquals(1, order.getItems().get(0).getCount());	//У товара корректно заполнено количество
 			assertEquals(1, order.getItems().get(1).getCount());	//У товара корректно заполнено количество
@@ -179,6 +424,15 @@ public class ShopServiceTest {
 							order.getItems().get(1).getDescription())));
 			return Mono.empty();
 		}).block();
+
+		//Запоздавшая отложенная запись корзины не меняет элементы оформленного заказа
+		List<Item> items = itemRep.findAllByOrderIdOrderByIdDesc(orderId).collectList().block();
+		LongIntMap counts = new LongIntMap();
+		counts.put(items.get(0).getWareId(), 5);
+		counts.put(items.get(1).getWareId(), 0);
+		itemRep.writeCounts(orderId, counts).block();
+		assertTrue(itemRep.findAllByOrderIdOrderByIdDesc(orderId).all(item -> item.getCount() == 1).block());
+		assertEquals(2, itemRep.findAllByOrderIdOrderByIdDesc(orderId).count().block());
 	}
 
 	/**
@@ -199,10 +453,447 @@ public class ShopServiceTest {
 		assertEquals(ware1.getTitle(), ware.getTitle());
 		assertEquals(ware1.getDescription(), ware.getDescription());
 		assertEquals(ware1.getPrice(), ware.getPrice());
-		assertEquals(ware1.getImage().length, ware.getImage().length);
+
+		//Картинка должна сохраниться отдельно от товара
+		assertEquals(ware1.getImage().length, shopServ.getImage(ware.getId()).block().length);
+		WareImageInfo info = shopServ.getImageInfo(ware.getId()).block();
+		assertNotNull(info);
+		assertEquals(ware1.getImage().length, info.size());
+		assertEquals(ware.getImageHash(), info.contentHash());	//Версия в URL совпадает с хэшем картинки
+
+		//Подчистить товар для устранения конфликтов в других тестах
+		imageRep.deleteByWareId(ware.getId()).block();
+		wareRep.deleteById(ware.getId()).block();
+	}
+
+	/**
+	 * Тест потоковой загрузки картинки: части из пула освобождаются, хэш считается по частям,
+	 * превышение размера прерывает загрузку
+	 */
+	@Test
+	void testStreamingImageUpload() {
+		NettyDataBufferFactory buffers = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+		List<DataBuffer> parts = List.of(buffers.wrap("Test ".getBytes()),
+										 buffers.allocateBuffer(16).write("image".getBytes()));
+		parts.forEach(part -> ((PooledDataBuffer) part).retain());		//Удержать, чтобы проверить освобождение
+
+		shopServ.addWare(InWareDTO.builder().title(ware1.getTitle()).description("").price(1F).build(),
+						 Flux.fromIterable(parts)).block();
+
+		Ware ware = wareRep.findAll().filter(w -> ware1.getTitle().equals(w.getTitle())).blockFirst();
+		assertArrayEquals("Test image".getBytes(), shopServ.getImage(ware.getId()).block());
+		assertEquals(imageServ.prepare("Test image".getBytes(), null).getContentHash(),
+					 ware.getImageHash());									//Хэш по частям = хэш целиком
+		parts.forEach(part -> assertTrue(DataBufferUtils.release(part)));		//Сервис отпустил свои ссылки
+
+		//Отдача картинки частями: целиком и отрезком, без чтения в память целиком
+		WareImageInfo info = shopServ.getImageInfo(ware.getId()).block();
+		assertArrayEquals("Test image".getBytes(), bytes(shopServ.readImage(info, ImageVariant.ORIGINAL, 0, info.size())));
+		assertArrayEquals("image".getBytes(), bytes(shopServ.readImage(info, ImageVariant.ORIGINAL, 5, 5)));
+
+		//Картинка больше порции записи дописывается в хранилище несколькими запросами
+		byte[] large = new byte[2_500_000];
+		new Random(1).nextBytes(large);
+		List<DataBuffer> largeParts = new ArrayList<>();
+		for (int i = 0; i < large.length; i += 8192)
+			largeParts.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(large, i, Math.min(large.length, i + 8192))));
+		shopServ.addWare(InWareDTO.builder().title(ware1.getTitle() + " large").description("").price(1F).build(),
+						 Flux.fromIterable(largeParts)).block();
+
+		Ware largeWare = wareRep.findAll().filter(w -> (ware1.getTitle() + " large").equals(w.getTitle())).blockFirst();
+		WareImageInfo largeInfo = shopServ.getImageInfo(largeWare.getId()).block();
+		assertEquals(large.length, largeInfo.size());
+		assertEquals(imageServ.prepare(large, null).getContentHash(), largeWare.getImageHash());
+		assertArrayEquals(large, shopServ.getImage(largeWare.getId()).block());
+		assertArrayEquals(large, bytes(shopServ.readImage(largeInfo, ImageVariant.ORIGINAL, 0, largeInfo.size())));
+
+		//Слишком большая картинка отклоняется, уже полученные части освобождаются, запись откатывается
+		Ware bare = new Ware();
+		bare.setTitle(ware1.getTitle() + " bare");
+		bare.setDescription("");
+		Long bareId = wareRep.save(bare).block().getId();
+		DataBuffer big = buffers.allocateBuffer(16).write("0123456789".getBytes());
+		((PooledDataBuffer) big).retain();
+		ImageServiceImpl limited = new ImageServiceImpl(imageRep, variantRep, DataSize.ofBytes(8), 1, 1);
+		assertThrows(DataBufferLimitException.class,
+					 () -> limited.write(bareId, Flux.just(big), null).as(transactionalOperator::transactional).block());
+		limited.stopVariants();
+		assertTrue(DataBufferUtils.release(big));
+		assertNull(imageRep.findByWareId(bareId).block());
+
+		//Подчистить товары для устранения конфликтов в других тестах
+		for (long id : List.of(ware.getId(), largeWare.getId(), bareId)) {
+			imageRep.deleteByWareId(id).block();
+			wareRep.deleteById(id).block();
+		}
+		wareServ.invalidateCache().block();
+	}
+
+	/**
+	 * Тест фонового построения уменьшенных вариантов картинки
+	 */
+	@Test
+	void testImageVariants() throws IOException {
+		BufferedImage photo = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < photo.getWidth(); x++)
+			for (int y = 0; y < photo.getHeight(); y++)
+				photo.setRGB(x, y, (x * 7 + y * 13) * 0x010101 ^ x * y);		//Шум - чтобы не сжималась до мелочи
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(photo, "png", png);
+
+		shopServ.addWare(InWareDTO.builder().title(ware1.getTitle()).description("").price(1F)
+								  .image(png.toByteArray()).build()).block();
+		Ware ware = wareRep.findAll().filter(w -> ware1.getTitle().equals(w.getTitle())).blockFirst();
+
+		//Варианты появляются в фоне - дождаться их
+		WareImageInfo thumb = Mono.defer(() -> shopServ.getImageInfo(ware.getId(), ImageVariant.THUMB))
+								  .repeatWhenEmpty(50, repeats -> repeats.delayElements(Duration.ofMillis(100)))
+								  .block();
+		assertNotNull(thumb);
+		assertEquals("image/jpeg", thumb.contentType());
+		assertEquals(ware.getImageHash(), thumb.contentHash());				//Версия - хэш исходной картинки
+		assertTrue(thumb.size() < png.size());
+
+		BufferedImage small = ImageIO.read(new ByteArrayInputStream(
+				shopServ.getImage(ware.getId(), ImageVariant.THUMB).block()));
+		assertEquals(300, small.getWidth());								//Пропорции сохранены
+		assertEquals(225, small.getHeight());
+
+		//Подчистить товар для устранения конфликтов в других тестах (варианты удаляются каскадно)
+		imageRep.deleteByWareId(ware.getId()).block();
+		wareRep.deleteById(ware.getId()).block();
+		wareServ.invalidateCache().block();
+	}
+
+	/**
+	 * Тест массового импорта: архив с каталогом CSV и картинками пишется пачками, ошибочные строки отклоняются
+	 */
+	@Test
+	void testBulkImport() throws IOException {
+		String catalog = """
+				title,price,description,image
+				Imported 1,15,"Описание, с запятой",img/1.png
+				Imported 2,20,,
+				Imported 3,abc,Неверная цена,
+				"Imported ""4""\",40,Последний,
+				""";
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+			zip.putNextEntry(new ZipEntry("catalog.csv"));
+			zip.write(catalog.getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("img/1.png"));
+			zip.write("ware".getBytes());
+		}
+		wareServ.invalidateCache().block();									//Поколение кэша до импорта
+		String version = redisStringTempl.opsForValue().get("CATALOG_VERSION").block();
+
+		ImportProgressDTO started = importServ.startImport(CatalogFormat.CSV, true,
+				Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(archive.toByteArray()))).block();
+
+		ImportProgressDTO done = Mono.defer(() -> importServ.getProgress(started.getId()))
+									 .filter(progress -> progress.getStatus() != ImportStatus.RUNNING)
+									 .repeatWhenEmpty(50, repeats -> repeats.delayElements(Duration.ofMillis(100)))
+									 .block();
+		assertEquals(ImportStatus.DONE, done.getStatus());
+		assertEquals(4, done.getRows());
+		assertEquals(3, done.getImported());
+		assertEquals(1, done.getFailed());
+		assertTrue(done.getLastError().startsWith("line 4:"));			//Номер строки файла (с заголовком)
+		assertEquals(2, done.getBatches());								//Пачки по 2 строки (профиль test)
+		assertEquals(Long.parseLong(version) + 2,						//Кэш сброшен по разу на пачку
+					 Long.parseLong(redisStringTempl.opsForValue().get("CATALOG_VERSION").block()));
+
+		List<Ware> imported = wareRep.findAll().filter(w -> w.getTitle().startsWith("Imported")).collectList().block();
+		assertEquals(3, imported.size());
+		Ware first = imported.stream().filter(w -> w.getTitle().equals("Imported 1")).findFirst().orElseThrow();
+		assertEquals("Описание, с запятой", first.getDescription());
+		assertEquals(15F, first.getPrice());
+		assertArrayEquals("ware".getBytes(), shopServ.getImage(first.getId()).block());
+		assertEquals(first.getImageHash(), shopServ.getImageInfo(first.getId()).block().contentHash());
+		assertTrue(imported.stream().anyMatch(w -> w.getTitle().equals("Imported \"4\"")));
+
+		//Подчистить товары для устранения конфликтов в других тестах
+		for (Ware ware : imported) {
+			imageRep.deleteByWareId(ware.getId()).block();
+			wareRep.deleteById(ware.getId()).block();
+		}
+		wareServ.invalidateCache().block();
+	}
+
+	/**
+	 * Тест сброса кэша страниц поиска при добавлении товара
+	 */
+	@Test
+	void testSearchCacheInvalidatedOnSave() {
+		//Первичный запрос кладёт страницу вместе с общим количеством в кэш
+		assertEquals(2, shopServ.findAllItemsPaginated(null, SortKind.NO, PageRequest.of(0, 5))
+								.block().getTotalElements());
+
+		shopServ.addWare(ware1).block();
+
+		//После добавления товара должно читаться новое поколение кэша
+		assertEquals(3, shopServ.findAllItemsPaginated(null, SortKind.NO, PageRequest.of(0, 5))
+								.block().getTotalElements());
+
+		//Очистка удаляет ключи только устаревших поколений - текущее и предыдущее остаются
+		long version = Long.parseLong(redisStringTempl.opsForValue().get("CATALOG_VERSION").block());
+		redisStringTempl.opsForValue().set("SEARCH:v" + (version - 1) + ":TEST", "0|0|").block();
+		redisStringTempl.opsForValue().set("SEARCH:v" + (version - 2) + ":TEST", "0|0|").block();
+		wareServ.sweepStaleCache().block();
+		List<String> keys = redisStringTempl.scan(ScanOptions.scanOptions().match("SEARCH:*").build())
+											.collectList().block();
+		assertTrue(keys.stream().anyMatch(k -> k.startsWith("SEARCH:v" + version + ":")));
+		assertTrue(keys.contains("SEARCH:v" + (version - 1) + ":TEST"));
+		assertTrue(keys.stream().noneMatch(k -> k.startsWith("SEARCH:v" + (version - 2) + ":")));
+		redisStringTempl.delete("SEARCH:v" + (version - 1) + ":TEST").block();
+
+		//Подчистить товар для устранения конфликтов в других тестах
+		Ware ware = wareRep.findAll()
+				.filter(w -> ware1.getTitle().equals(w.getTitle()))
+				.blockFirst();
+		imageRep.deleteByWareId(ware.getId()).block();
+		wareRep.deleteById(ware.getId()).block();
+		wareServ.invalidateCache().block();
+	}
+
+	/**
+	 * Тест одновременных промахов кэша поиска: страница пишется один раз и с TTL
+	 */
+	@Test
+	void testConcurrentSearchMisses() {
+		wareServ.invalidateCache().block();
+		String version = redisStringTempl.opsForValue().get("CATALOG_VERSION").block();
+		String searchKey = "SEARCH:v" + version + ":NO_SORT:NO_SEARCH:0:5:TOTAL";
+
+		List<Page<Ware>> pages = Flux.range(0, 10)
+				.flatMap(i -> wareServ.searchPage(null, SortKind.NO, PageRequest.of(0, 5), true))
+				.collectList()
+				.block();
+
+		assertTrue(pages.stream().allMatch(p -> p.getContent().size() == 2));		//Все получили полную страницу
+		assertTrue(pages.stream().allMatch(p -> p.getTotalElements() == 2));		//и согласованное количество
+		assertTrue(redisStringTempl.opsForValue().get(searchKey).block().startsWith("2|0|"));	//Одно значение в кэше
+		assertTrue(redisStringTempl.getExpire(searchKey).block().toMillis() > 0);		//Страница истекает по TTL
+	}
+
+	/**
+	 * Тест метрик: промахи и попадания кэша по пространствам имён и вызовы репозиториев
+	 */
+	@Test
+	void testCacheAndRepositoryMetrics() {
+		wareServ.invalidateCache().block();
+		double misses = cacheGets("SEARCH", "miss");
+		double hits = cacheGets("SEARCH", "hit");
+		double calls = meterRegistry.find("intershop.db.calls")
+									.tags("repository", "WareRep", "method", "searchPage")
+									.timers().stream().mapToLong(t -> t.count()).sum();
+
+		wareServ.searchPage(null, SortKind.NO, PageRequest.of(0, 5), true).block();	//Промах - запрос в базу
+		wareServ.searchPage(null, SortKind.NO, PageRequest.of(0, 5), true).block();	//Попадание
+
+		assertEquals(misses + 1, cacheGets("SEARCH", "miss"));
+		assertEquals(hits + 1, cacheGets("SEARCH", "hit"));
+		assertEquals(calls + 1, meterRegistry.get("intershop.db.calls")
+											 .tags("repository", "WareRep", "method", "searchPage", "outcome", "success")
+											 .timer().count());
+		assertTrue(meterRegistry.get("intershop.cache.loads").tag("cache", "SEARCH").timer().count() > 0);
+		assertNotNull(meterRegistry.find("intershop.cache.gets").tag("cache", "WARE").counter());
+		assertNotNull(meterRegistry.find("intershop.cache.gets").tag("cache", "CART").counter());
+	}
+
+	/**
+	 * Тест отсортированных индексов каталога: страницы без поиска берутся из Redis в том же порядке,
+	 * что и из базы, новый товар попадает в индекс без перестройки
+	 */
+	@Test
+	void testSortedWareIndex() {
+		wareServ.invalidateCache().block();									//Индекс сброшен - перестроить
+		long version = Long.parseLong(redisStringTempl.opsForValue().get("CATALOG_VERSION").block());
+		rebuildIndex();
+		//Страницы, закэшированные из базы до подмены индекса, больше не читаются
+		assertTrue(Long.parseLong(redisStringTempl.opsForValue().get("CATALOG_VERSION").block()) > version);
+
+		List<SearchPage> fromDb = new ArrayList<>();
+		for (SortKind sortKind : SortKind.values())
+			for (int page = 0; page < 3; page++)
+				fromDb.add(wareRep.searchPage(null, sortKind, PageRequest.of(page, 1), true).block());
+
+		double calls = searchPageCalls();
+		int i = 0;
+		for (SortKind sortKind : SortKind.values())
+			for (int page = 0; page < 3; page++, i++) {
+				Page<Ware> fromIndex = wareServ.searchPage(null, sortKind, PageRequest.of(page, 1), true).block();
+				assertEquals(fromDb.get(i).ids(), fromIndex.getContent().stream().map(Ware::getId).toList());
+				assertEquals(fromDb.get(i).total(), fromIndex.getTotalElements());
+				assertEquals(fromDb.get(i).hasNext(), fromIndex.hasNext());
+			}
+		assertEquals(calls, searchPageCalls());								//В базу - ни одного запроса
+
+		shopServ.addWare(ware1).block();									//"Test ware title" - первый по названию
+		Page<Ware> first = wareServ.searchPage(null, SortKind.ALPHA, PageRequest.of(0, 1), true).block();
+		assertEquals(ware1.getTitle(), first.getContent().get(0).getTitle());
+		assertEquals(3, first.getTotalElements());
+		assertEquals(calls, searchPageCalls());
+
+		//Изменение несуществующего товара - ошибка 404, а не молчаливое "ничего"
+		Ware missing = new Ware();
+		missing.setId(Long.MAX_VALUE);
+		missing.setTitle(ware1.getTitle());
+		ResponseStatusException notFound = assertThrows(ResponseStatusException.class,
+														() -> wareServ.save(missing).block());
+		assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+
+		//Подчистить товар для устранения конфликтов в других тестах
+		imageRep.deleteByWareId(first.getContent().get(0).getId()).block();
+		wareRep.deleteById(first.getContent().get(0).getId()).block();
+		wareServ.invalidateCache().block();
+	}
+
+	/**
+	 * Перестройка индекса каталога (повтор, пока идёт фоновая перестройка, начатая промахом кэша)
+	 */
+	private void rebuildIndex() {
+		assertTrue(Mono.defer(wareServ::rebuildIndex)
+					   .filter(rebuilt -> rebuilt)
+					   .repeatWhenEmpty(50, repeats -> repeats.delayElements(Duration.ofMillis(100)))
+					   .block());
+	}
+
+	private double searchPageCalls() {
+		return meterRegistry.find("intershop.db.calls")
+							.tags("repository", "WareRep", "method", "searchPage")
+							.timers().stream().mapToLong(t -> t.count()).sum();
+	}
+
+	/**
+	 * Тест прогрева кэша: после сброса первые страницы каталога и частые поисковые запросы уже в кэше
+	 */
+	@Test
+	void testCacheWarmup() {
+		//Поисковые запросы пользователей учитываются по первой странице
+		shopServ.findAllItemsPaginated("title 2", SortKind.NO, PageRequest.of(0, 10)).block();
+		shopServ.findAllItemsPaginated("Title 2", SortKind.NO, PageRequest.of(0, 10)).block();
+		String bucket = "SEARCH_TERMS:" + System.currentTimeMillis() / Duration.ofHours(1).toMillis();
+		assertTrue(redisStringTempl.opsForZSet().score(bucket, "TITLE 2").block() >= 2);
+
+		wareServ.invalidateCache().block();									//Новое поколение - кэш пуст
+		rebuildIndex();														//Подмена индекса - тоже новое поколение
+		warmupServ.warmUp().block();
+
+		double misses = cacheGets("SEARCH", "miss");
+		double hits = cacheGets("SEARCH", "hit");
+		assertEquals(2, shopServ.findAllItemsPaginated(null, SortKind.ALPHA, PageRequest.of(0, 10))
+								.block().getTotalElements());
+		assertEquals(1, shopServ.findAllItemsPaginated("tItle 2", SortKind.NO, PageRequest.of(0, 10))
+								.block().getTotalElements());
+		assertEquals(misses, cacheGets("SEARCH", "miss"));					//Обе страницы - из кэша
+		assertEquals(hits + 2, cacheGets("SEARCH", "hit"));
+
+		//До окончания первого прогрева экземпляр не готов принимать трафик
+		assertEquals(Status.UP, warmupHealth.health().getStatus());			//В тестах прогрев выключен
+		WarmupServiceImpl cold = new WarmupServiceImpl(wareServ, redisStringTempl, true, 1, 10, 0,
+				Duration.ofHours(1), Duration.ZERO, Duration.ZERO, Duration.ofSeconds(1), true, meterRegistry);
+		assertEquals(Status.OUT_OF_SERVICE, new WarmupHealthIndicator(cold).health().getStatus());
+	}
+
+	private double cacheGets(String cache, String result) {
+		return meterRegistry.find("intershop.cache.gets")
+							.tags("cache", cache, "result", result)
+							.counters().stream().mapToDouble(c -> c.count()).sum();
+	}
+
+	/**
+	 * Тест двоичного формата товаров в кэше: со сжатием и без, чтение прежнего JSON
+	 */
+	@Test
+	void testBinaryWareCodec() {
+		Ware ware = new Ware(7L, "Товар", "Описание ".repeat(100), 12.5F, "abc",
+							 LocalDateTime.of(2024, 5, 1, 10, 20, 30, 123456789));
+		Ware empty = new Ware(8L, null, null, 0F, null, null);
+
+		BinaryWareSerializer compressing = new BinaryWareSerializer(64);
+		BinaryWareSerializer plain = new BinaryWareSerializer(-1);
+		byte[] packed = compressing.serialize(ware);
+		byte[] unpacked = plain.serialize(ware);
+		byte[] json = new Jackson2JsonRedisSerializer<>(Ware.class).serialize(ware);
+
+		assertTrue(packed.length < unpacked.length);						//Длинное описание сжато
+		assertTrue(unpacked.length < json.length);							//Двоичный формат компактнее JSON
+		for (byte[] bytes : List.of(packed, unpacked, plain.serialize(empty), json)) {
+			Ware read = plain.deserialize(bytes);
+			Ware expected = read.getId() == 7L ? ware : empty;
+			assertEquals(expected.getTitle(), read.getTitle());
+			assertEquals(expected.getDescription(), read.getDescription());
+			assertEquals(expected.getPrice(), read.getPrice());
+			assertEquals(expected.getImageHash(), read.getImageHash());
+			if (bytes != json)												//JSON хранит время с точностью до секунды
+				assertEquals(expected.getCreatedAt(), read.getCreatedAt());
+		}
+
+		//Значение, которое не удаётся прочитать, считается промахом кэша
+		wareServ.invalidateCache().block();									//Сбросить и локальный кэш
+		redisStringTempl.opsForValue().set("WARE:1000", "corrupted").block();
+		assertEquals("Test ware title 1", wareServ.findById(1000L).block().getTitle());
+	}
+
+	/**
+	 * Тест версионных миграций: применены при запуске, повторно не выполняются, изменённый скрипт не принимается
+	 */
+	@Test
+	void testMigrationsAppliedOnce() throws Exception {
+		List<Integer> versions = databaseClient.sql("SELECT version FROM schema_version ORDER BY version")
+											   .map(row -> row.get("version", Integer.class))
+											   .all().collectList().block();
+		assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 1000), versions);		//Общие, платформенные (h2) и тестовые скрипты
+
+		migrator.migrate().block();
+		assertEquals(2, wareRep.count().block());					//Тестовые данные не вставлены повторно
+
+		//Применённый скрипт изменён - запуск прерывается
+		String checksum = databaseClient.sql("SELECT checksum FROM schema_version WHERE version = 1000")
+										.map(row -> row.get("checksum", String.class))
+										.one().block();
+		databaseClient.sql("UPDATE schema_version SET checksum = 'changed' WHERE version = 1000").then().block();
+		try {
+			assertThrows(IllegalStateException.class, () -> migrator.migrate().block());
+		} finally {
+			databaseClient.sql("UPDATE schema_version SET checksum = :checksum WHERE version = 1000")
+						  .bind("checksum", checksum)
+						  .then().block();
+		}
+	}
+
+	/**
+	 * Тест переноса картинок из столбца wares.image прежней схемы в ware_images и удаления столбца
+	 */
+	@Test
+	void testLegacyImagesCopied() {
+		byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 1, 2, 3};
+		Ware ware = wareRep.save(new Ware(0, "Legacy ware", null, 1F, null, null)).block();
+		databaseClient.sql("ALTER TABLE wares ADD COLUMN image BYTEA").then().block();	//Столбец прежней схемы
+		databaseClient.sql("UPDATE wares SET image = :image WHERE id = :id")
+					  .bind("image", png)
+					  .bind("id", ware.getId())
+					  .then().block();
+
+		databaseClient.inConnection(connection -> ScriptUtils.executeSqlScript(connection,
+						new ClassPathResource("db/migration/h2/V7__copy_legacy_images.sql")))
+					  .block();
+
+		WareImageInfo info = shopServ.getImageInfo(ware.getId()).block();
+		assertEquals("image/png", info.contentType());
+		assertEquals(png.length, info.size());
+		assertEquals(info.contentHash(), wareRep.findById(ware.getId()).block().getImageHash());	//Версия в URL
+		assertArrayEquals(png, shopServ.getImage(ware.getId()).block());
+		assertEquals(0L, databaseClient.sql("SELECT COUNT(*) AS cnt FROM information_schema.columns " +
+											"WHERE table_name = 'WARES' AND column_name = 'IMAGE'")
+									   .map(row -> row.get("cnt", Long.class))
+									   .one().block());							//Столбец после переноса удалён
 
 		//Подчистить товар для устранения конфликтов в других тестах
+		imageRep.deleteByWareId(ware.getId()).block();
 		wareRep.deleteById(ware.getId()).block();
+		wareServ.invalidateCache().block();
 	}
 
 	/**
@@ -220,6 +911,34 @@ public class ShopServiceTest {
 					return Mono.empty();
 				}).block();
 
+		//Без подсчёта общего количества страница знает только о наличии следующей
+		Page<Ware> page = wareServ.searchPage(null, SortKind.ALPHA, PageRequest.of(0, 1), false).block();
+		assertEquals(1, page.getContent().size());
+		assertTrue(page.hasNext());
+		page = wareServ.searchPage(null, SortKind.ALPHA, PageRequest.of(1, 1), false).block();
+		assertEquals(1, page.getContent().size());
+		assertFalse(page.hasNext());
+	}
+
+	/**
+	 * Тест поиска товаров по названию и описанию
+	 */
+	@Test
+	void testSearchItems(){
+		//Поиск по описанию
+		Page<ItemDTO> page = shopServ.findAllItemsPaginated("DESCRIPTION 2", SortKind.NO, PageRequest.of(0, 5))
+									 .block();
+		assertEquals(1, page.getTotalElements());
+		assertEquals("Test ware title 2", page.getContent().get(0).getTitle());
+
+		//Спецсимволы LIKE в строке поиска не работают как шаблон
+		assertEquals(0, shopServ.findAllItemsPaginated("ware%1", SortKind.NO, PageRequest.of(0, 5))
+								.block().getTotalElements());
+
+		//Сортировка по релевантности: совпадение в названии важнее совпадения в описании
+		page = shopServ.findAllItemsPaginated("title", SortKind.RELEVANCE, PageRequest.of(0, 5)).block();
+		assertEquals(2, page.getTotalElements());
+		assertEquals(2, page.getContent().size());
 	}
 
 	/**
@@ -240,6 +959,44 @@ public class ShopServiceTest {
 				.block();
 	}
 
+	/**
+	 * Тест повторного оформления заказа с тем же токеном и фиксации цен
+	 */
+	@Test
+	void testBuyIdempotentWithPriceSnapshot() {
+		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
+
+		Long orderId = shopServ.buy("checkout-token").block();
+		assertEquals(orderId, shopServ.buy("checkout-token").block());		//Повторная отправка - тот же заказ
+		assertEquals(1, orderRep.count().block());							//и новая корзина не оформлялась
+
+		Order order = orderRep.findById(orderId).block();
+		assertEquals(OrderStatus.BUY, order.getStat());
+		assertAmount(3, order.getTotalAmount());							//Сумма и количество хранятся в заказе
+		assertEquals(2, order.getItemCount());
+		assertEquals("Test ware title 1",									//Название зафиксировано в элементе
+					 itemRep.findByOrderIdAndWareId(orderId, 1000L).block().getTitle());
+
+		//Изменение цены товара не меняет историю
+		Ware ware = wareRep.findById(1000L).block();
+		ware.setPrice(100);
+		wareRep.save(ware).block();
+		try {
+			assertAmount(3, shopServ.getOrder(orderId).block().getTotalSum());
+
+			//Повторное оформление по устаревшему идентификатору корзины в сессии не переписывает цены
+			CartSession stale = CartSession.of(UUID.randomUUID().toString(),
+											   new InMemoryWebSessionStore().createWebSession().block());
+			stale.setOrderId(orderId);
+			assertNull(shopServ.buy("other-token").contextWrite(ctx -> ctx.put(CartSession.class, stale)).block());
+			assertAmount(1, itemRep.findByOrderIdAndWareId(orderId, 1000L).block().getUnitPrice());
+			assertAmount(3, shopServ.getOrder(orderId).block().getTotalSum());
+		} finally {
+			ware.setPrice(1);
+			wareRep.save(ware).block();
+		}
+	}
+
 	/**
 	 * Тест получения списка всех заказов
 	 */
@@ -249,18 +1006,20 @@ public class ShopServiceTest {
 		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
 
 		//Произвести покупку (закрыть первый заказ)
-		shopServ.buy().block();
+		shopServ.buy(null).block();
 
 		//Формирование второго заказа
 		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
+		cartServ.flushDirty().block();		//Активная корзина попадает в базу отложенной записью
 
-		shopServ.getAllOrders()
-				.collectList()
-				.flatMap(orders -> {
+		shopServ.getOrders(null, 10, false)
+				.flatMap(page -> {
+					List<OrderDTO> orders = page.getOrders();
 					assertEquals(2, orders.size());	//Ожидается два заказа
+					assertNull(page.getNextCursor());	//Других страниц нет
 					for (var order: orders) {
 						assertEquals(2, order.getItems().size());	//Ожидается по 2 товара в заказе
-						assertEquals(3, order.getTotalSum());		//Корректная общая сумма = 3
+						assertAmount(3, order.getTotalSum());		//Корректная общая сумма = 3
 					}
 
 					assertTrue(List.of(OrderStatus.NEW, OrderStatus.BUY)	//Один заказ завершённый, второй - новый
@@ -270,4 +1029,52 @@ public class ShopServiceTest {
 					return Mono.empty();
 				}).block();
 	}
+
+	/**
+	 * Тест постраничного получения заказов и режима сводки
+	 */
+	@Test
+	void getOrdersPaginated(){
+		//Формирование двух заказов
+		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
+		shopServ.buy(null).block();
+		wareRep.findAll().flatMap(w -> shopServ.changeItemAmount(w.getId(), ItemAction.PLUS)).blockLast();
+		cartServ.flushDirty().block();
+
+		//Первая страница - последний заказ
+		OrderPageDTO first = shopServ.getOrders(null, 1, true).block();
+		assertNotNull(first);
+		assertEquals(1, first.getOrders().size());
+		assertNotNull(first.getNextCursor());
+		assertEquals(OrderStatus.NEW, first.getOrders().get(0).getStat());
+		assertNull(first.getOrders().get(0).getItems());			//В режиме сводки элементы не загружаются
+		assertEquals(2, first.getOrders().get(0).getItemCount());	//2 товара по 1 шт.
+		assertAmount(3, first.getOrders().get(0).getTotalSum());	//Корректная общая сумма = 3
+
+		//Вторая (последняя) страница - предыдущий заказ
+		OrderPageDTO second = shopServ.getOrders(first.getNextCursor(), 1, true).block();
+		assertNotNull(second);
+		assertEquals(1, second.getOrders().size());
+		assertNull(second.getNextCursor());
+		assertEquals(OrderStatus.BUY, second.getOrders().get(0).getStat());
+	}
+
+	/**
+	 * Сборка потока частей в массив байт (с освобождением частей)
+	 */
+	private static byte[] bytes(Flux<DataBuffer> content) {
+		DataBuffer joined = DataBufferUtils.join(content).block();
+		byte[] ret = new byte[joined.readableByteCount()];
+		joined.read(ret);
+		DataBufferUtils.release(joined);
+		return ret;
+	}
+
+	/**
+	 * Сравнение денежной суммы без учёта масштаба BigDecimal
+	 */
+	private static void assertAmount(long expected, BigDecimal actual) {
+		assertNotNull(actual);
+		assertEquals(0, BigDecimal.valueOf(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+	}
 }
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.intershop.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Flux;
+import redis.embedded.RedisServer;
+import ru.yandex.practicum.intershop.IntershopApplication;
+import ru.yandex.practicum.intershop.dto.ItemDTO;
+import ru.yandex.practicum.intershop.dto.OrderDTO;
+import ru.yandex.practicum.intershop.model.ItemAction;
+import ru.yandex.practicum.intershop.model.SortKind;
+import ru.yandex.practicum.intershop.model.Ware;
+import ru.yandex.practicum.intershop.repository.WareRep;
+import ru.yandex.practicum.intershop.service.ShopService;
+import ru.yandex.practicum.intershop.service.WareService;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки горячих путей сервисов магазина.
+ * Приложение поднимается целиком (без веб-сервера) на H2 R2DBC в памяти и встроенном Redis,
+ * каталог и корзина наполняются заданным числом товаров.
+ *
+ * Запуск: mvn -Pjmh verify
+ * Скорость выделения памяти на операцию - профилировщик gc (gc.alloc.rate.norm, байт/операцию).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShopServiceBenchmark {
+
+    @Param({"100", "10000"})
+    private int catalogSize;            //Товаров в каталоге
+
+    @Param({"1", "50"})
+    private int cartSize;               //Товаров в корзине
+
+    private RedisServer redisServer;
+    private ConfigurableApplicationContext context;
+    private ShopService shopServ;
+    private WareService wareServ;
+    private long firstWareId;
+    private long cartWareId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int redisPort = freePort();
+        redisServer = new RedisServer(redisPort);
+        redisServer.start();
+
+        context = new SpringApplicationBuilder(IntershopApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("spring.data.redis.port=" + redisPort,
+                            "spring.r2dbc.url=r2dbc:h2:mem:///bench" + System.nanoTime(),
+                            "intershop.migration.locations=classpath:db/migration,classpath:db/migration/{vendor}",
+                            "logging.level.root=WARN")
+                .run();
+
+        shopServ = context.getBean(ShopService.class);
+        wareServ = context.getBean(WareService.class);
+        WareRep wareRep = context.getBean(WareRep.class);
+
+        //Наполнение каталога
+        firstWareId = Flux.range(0, catalogSize)
+                          .map(i -> {
+                              Ware ware = new Ware();
+                              ware.setTitle("Ware title " + i);
+                              ware.setDescription("Ware description " + i);
+                              ware.setPrice(1 + i % 100);
+                              return ware;
+                          })
+                          .buffer(1000)
+                          .concatMap(wareRep::saveAll)
+                          .map(Ware::getId)
+                          .reduce(Long.MAX_VALUE, Math::min)
+                          .block();
+        wareServ.invalidateCache().block();
+
+        //Наполнение корзины
+        Flux.range(0, Math.min(cartSize, catalogSize))
+            .concatMap(i -> shopServ.changeItemAmount(firstWareId + i, ItemAction.PLUS))
+            .blockLast();
+        cartWareId = firstWareId;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (context != null)
+            context.close();
+        if (redisServer != null)
+            redisServer.stop();
+    }
+
+    @Benchmark
+    public Page<ItemDTO> findAllItemsPaginated() {
+        return shopServ.findAllItemsPaginated(null, SortKind.ALPHA, PageRequest.of(0, 10)).block();
+    }
+
+    @Benchmark
+    public Page<ItemDTO> findAllItemsPaginatedSearch() {
+        return shopServ.findAllItemsPaginated("title 1", SortKind.RELEVANCE, PageRequest.of(0, 10)).block();
+    }
+
+    @Benchmark
+    public OrderDTO getOrder() {
+        return shopServ.getOrder().block();
+    }
+
+    /**
+     * Увеличение и уменьшение количества - корзина остаётся того же размера
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void changeItemAmount() {
+        shopServ.changeItemAmount(cartWareId, ItemAction.PLUS).block();
+        shopServ.changeItemAmount(cartWareId, ItemAction.MINUS).block();
+    }
+
+    @Benchmark
+    public Page<Ware> searchPage() {
+        return wareServ.searchPage(null, SortKind.PRICE, PageRequest.of(0, 10), true).block();
+    }
+
+    @Benchmark
+    public Ware findById() {
+        return wareServ.findById(firstWareId + ThreadLocalRandom.current().nextInt(catalogSize)).block();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
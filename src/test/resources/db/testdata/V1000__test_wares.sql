@@ -1,2 +1,3 @@
+-- Тестовые товары
 INSERT INTO wares (id, title, description, price) values (1000, 'Test ware title 1', 'Test ware description 1', 1);
 INSERT INTO wares (id, title, description, price) values (2000, 'Test ware title 2', 'Test ware description 2', 2);